@@ -0,0 +1,72 @@
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+// Durable deposits per second from a few request threads, waiting on each deposit as before against
+// keeping up to <window> deposits in flight through depositAsync, plus how long the request thread itself
+// is held per call; the last row has no window at all, so only the journal's bounded queue holds it back
+// run: java -cp out AsyncPersistenceBenchmark <seconds per run> <window>
+public class AsyncPersistenceBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 3;
+        int window = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+        System.out.printf("%-8s | %-10s | %15s | %20s | %s%n", "Threads", "mode", "durable ops/sec", "call p99 (request) us", "max queued records");
+        for (int threads : new int[] {1, 4}) {
+            run(threads, seconds, 0);
+            run(threads, seconds, window);
+        }
+        run(1, seconds, Integer.MAX_VALUE);
+    }
+
+    // window 0 waits on every deposit
+    private static void run(int threads, double seconds, int window) throws Exception {
+        File file = File.createTempFile("async-persistence", ".json");
+        BenchData.writeSnapshot(file, 10_000, 0);
+        UserManager userManager = new UserManager(file.getPath());
+        TransactionEngine engine = new TransactionEngine(userManager);
+        List<Account> accounts = userManager.getAccounts();
+        Metrics.Histogram calls = new Metrics.Histogram();
+
+        long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        long[] counts = new long[threads];
+        long[] maxQueued = new long[1];
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            new Thread(() -> {
+                Semaphore inFlight = new Semaphore(window == 0 ? 1 : window);
+                int i = id;
+                while (System.nanoTime() < deadline) {
+                    Account account = accounts.get(i % accounts.size());
+                    i += threads;
+                    long start = System.nanoTime();
+                    if (window == 0) {
+                        engine.deposit(account, 1);
+                        calls.recordSince(start);
+                        counts[id]++;
+                        continue;
+                    }
+                    inFlight.acquireUninterruptibly();
+                    engine.depositAsync(account, 1).thenRun(inFlight::release);
+                    calls.recordSince(start);
+                    counts[id]++;
+                    if (id == 0 && (counts[id] & 1023) == 0) maxQueued[0] = Math.max(maxQueued[0], userManager.getQueuedJournalRecords());
+                }
+                if (window > 0) inFlight.acquireUninterruptibly(window); // wait out the last ones
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - deadline) / 1e9 + seconds; // includes draining the window
+
+        long total = 0;
+        for (long count : counts) total += count;
+        String mode = window == 0 ? "blocking" : window == Integer.MAX_VALUE ? "async, all" : "async " + window;
+        System.out.printf("%-8d | %-10s | %15.0f | %20.1f | %d%n", threads, mode, total / elapsed, calls.percentile(0.99) / 1e3,
+                maxQueued[0]);
+        ConcurrencyStress.deleteStore(file);
+    }
+}
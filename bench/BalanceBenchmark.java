@@ -0,0 +1,80 @@
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Compares the compare-and-set balance in Account against a synchronized double balance
+// with every thread hitting the same hot account
+// run: java -cp out BalanceBenchmark <operationsPerThread>
+public class BalanceBenchmark {
+
+    interface Balance {
+        void credit(long cents);
+        boolean debit(long cents);
+    }
+
+    // what Account used to do, made thread safe the simple way
+    static class SynchronizedBalance implements Balance {
+        private double balance = 1_000_000;
+
+        public synchronized void credit(long cents) { balance += cents / 100.0; }
+
+        public synchronized boolean debit(long cents) {
+            double amount = cents / 100.0;
+            if (amount > balance) return false;
+            balance -= amount;
+            return true;
+        }
+    }
+
+    static class AtomicBalance implements Balance {
+        private final Account account = new Account("1234", "merchant", LocalDate.of(2000, 1, 1), 1_000_000, "000000001", "000000001");
+
+        public void credit(long cents) { account.depositCents(cents); }
+        public boolean debit(long cents) { return account.withdrawCents(cents); }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+
+        System.out.printf("%-8s | %-22s | %-22s%n", "Threads", "synchronized ops/us", "compare-and-set ops/us");
+        for (int threads : new int[] {1, 4, 16}) {
+            double sync = 0, cas = 0;
+            for (int round = 0; round < 3; round++) { // the last round counts, the others warm up
+                sync = run(new SynchronizedBalance(), threads, operations);
+                cas = run(new AtomicBalance(), threads, operations);
+            }
+            System.out.printf("%-8d | %-22.1f | %-22.1f%n", threads, sync, cas);
+        }
+    }
+
+    // nine credits for every debit, like a settlement account receiving payments
+    static double run(Balance balance, int threads, int operations) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong sink = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long rejected = 0;
+                for (int i = 0; i < operations; i++) {
+                    if (i % 10 == 0) {
+                        if (!balance.debit(250)) rejected++;
+                    } else {
+                        balance.credit(125);
+                    }
+                }
+                sink.addAndGet(rejected);
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        long nanos = System.nanoTime() - begin;
+        return (double) threads * operations / (nanos / 1000.0);
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.Locale;
+
+// Tiny benchmark harness: warms an operation up, then reports the mean time per call of the
+// measured rounds, stands in for JMH since the project is built with plain javac
+public class Bench {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    interface Op {
+        void run(int i) throws Exception; // i counts calls within a round
+    }
+
+    static {
+        Locale.setDefault(Locale.ROOT); // stable number format so results can be diffed between runs
+    }
+
+    static void header() {
+        System.out.printf("%-24s | %-10s | %-8s | %-14s | %s%n", "Benchmark", "accounts", "txns", "ns/op", "+/- %");
+    }
+
+    // runs op `calls` times per round and prints the mean and spread over the measured rounds
+    static double measure(String name, int accounts, int transactions, int calls, Op op) throws Exception {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            runRound(calls, op);
+        }
+
+        double[] results = new double[MEASURED_ROUNDS];
+        double sum = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            results[round] = runRound(calls, op);
+            sum += results[round];
+        }
+        double mean = sum / MEASURED_ROUNDS;
+        double spread = 0;
+        for (double result : results) spread = Math.max(spread, Math.abs(result - mean));
+
+        System.out.printf("%-24s | %-10d | %-8d | %-14.1f | %.1f%n", name, accounts, transactions, mean, 100 * spread / mean);
+        return mean;
+    }
+
+    private static double runRound(int calls, Op op) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            op.run(i);
+        }
+        return (System.nanoTime() - start) / (double) calls;
+    }
+
+    // parses "1000,10000" style lists from the command line
+    static int[] ints(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.*;
+
+// Generates users.json style files for the benchmarks without going through UserManager
+public class BenchData {
+    static final int LEGACY_EVERY = 8; // writeLedger senders whose transfers carry no transfer id
+
+    static String userName(int n) { return "user" + n; }
+    static String accountNumber(int n) { return String.format("%09d", n); }
+
+    // every account gets the same deposits so its balance matches its history
+    static void writeSnapshot(File file, int accounts, int transactionsPerAccount) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            writer.write("[\n");
+            for (int i = 0; i < accounts; i++) {
+                writer.write("  {\n");
+                writer.write("    \"userName\": \"" + userName(i) + "\",\n");
+                writer.write("    \"pin\": \"1234\",\n");
+                writer.write("    \"dateOfBirth\": \"2000-01-01\",\n");
+                writer.write("    \"balance\": " + (10.0 * transactionsPerAccount) + ",\n");
+                writer.write("    \"accountNumber\": \"" + accountNumber(i) + "\",\n");
+                writer.write("    \"routingNumber\": \"000000001\",\n");
+                writer.write("    \"transactions\": [\n");
+                for (int j = 0; j < transactionsPerAccount; j++) {
+                    writer.write("      {\n");
+                    writer.write("        \"type\": \"Deposit\",\n");
+                    writer.write("        \"amount\": 10.0,\n");
+                    writer.write("        \"dateTime\": \"2025-01-01T10:" + String.format("%02d:%02d", j / 60 % 60, j % 60) + "\"\n");
+                    writer.write(j < transactionsPerAccount - 1 ? "      },\n" : "      }\n");
+                }
+                writer.write("    ]\n");
+                writer.write(i < accounts - 1 ? "  },\n" : "  }\n");
+            }
+            writer.write("]\n");
+        }
+    }
+
+    // a store whose transfers pair up: every 4 transactions an account deposits 100, sends 10 to the next account,
+    // receives 10 from the one before and withdraws 5, transactionsPerAccount should be a multiple of 4
+    // every brokenEvery-th account (0 for none) is written with a balance a dollar off and its first incoming leg lost
+    // every LEGACY_EVERY-th account sends as the code before transfer ids did, see IntegrityVerifier.key
+    static void writeLedger(File file, int accounts, int transactionsPerAccount, int brokenEvery) throws IOException {
+        String[] types = {"Deposit", "Transfer", "Incoming Transfer", "Withdraw"};
+        double[] amounts = {100.0, 10.0, 10.0, 5.0};
+        try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            writer.write("[\n");
+            for (int i = 0; i < accounts; i++) {
+                boolean broken = brokenEvery > 0 && i % brokenEvery == 0;
+                int previous = (i + accounts - 1) % accounts;
+                writer.write("  {\n");
+                writer.write("    \"userName\": \"" + userName(i) + "\",\n");
+                writer.write("    \"pin\": \"1234\",\n");
+                writer.write("    \"dateOfBirth\": \"2000-01-01\",\n");
+                writer.write("    \"balance\": " + (95.0 * (transactionsPerAccount / 4) + (broken ? 1 : 0)) + ",\n");
+                writer.write("    \"accountNumber\": \"" + accountNumber(i) + "\",\n");
+                writer.write("    \"routingNumber\": \"000000001\",\n");
+                writer.write("    \"transactions\": [\n");
+                for (int j = 0; j < transactionsPerAccount; j++) {
+                    int kind = j % 4;
+                    long transferId = kind == 1 ? (long) i * transactionsPerAccount + j + 1
+                            : kind == 2 ? (long) previous * transactionsPerAccount + j : 0; // the slot before in the sender
+                    boolean deposit = broken && j == 2; // and still counted in the balance as a deposit
+                    // every LEGACY_EVERY-th sender wrote its transfers before the ids, one now() per leg a little apart;
+                    // every other one of those straddles a second
+                    int sender = kind == 1 ? i : previous;
+                    int second = j;
+                    long nanos = 0;
+                    if (transferId != 0 && sender % LEGACY_EVERY == LEGACY_EVERY - 1) {
+                        boolean straddles = sender / LEGACY_EVERY % 2 == 0;
+                        if (kind == 1) {
+                            nanos = straddles ? 999_800_000 : 500_000_000;
+                        } else { // the sender's leg is one slot, so one second, earlier
+                            second = straddles ? j : j - 1;
+                            nanos = straddles ? 100_000 : 500_250_000;
+                        }
+                        transferId = 0;
+                    }
+                    if (deposit) transferId = 0;
+                    writer.write("      {\n");
+                    writer.write("        \"type\": \"" + (deposit ? "Deposit" : types[kind]) + "\",\n");
+                    writer.write("        \"amount\": " + amounts[kind] + ",\n");
+                    writer.write("        \"dateTime\": \"2025-01-01T" + String.format("%02d:%02d:%02d", second / 3600 % 24, second / 60 % 60, second % 60)
+                            + (nanos == 0 ? "" : String.format(".%09d", nanos)) + "\"");
+                    if (transferId != 0) writer.write(",\n        \"transferId\": \"" + transferId + "\"");
+                    writer.write(j < transactionsPerAccount - 1 ? "\n      },\n" : "\n      }\n");
+                }
+                writer.write("    ]\n");
+                writer.write(i < accounts - 1 ? "  },\n" : "  }\n");
+            }
+            writer.write("]\n");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+// Transfers between accounts picked at random from all of them, so the working set is every history,
+// in a JVM whose heap is a fraction of that; prints throughput and the cache metrics once a second
+// the data is built first in this JVM, which needs room for all of it, then a child JVM runs with a small heap
+// run: java -Xmx3g -cp out CacheBenchmark <accounts> <transactionsPerAccount> <childHeapMb> <cachedAccounts> <threads> <seconds>
+public class CacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("run")) {
+            run(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 40_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int heapMb = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int cached = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+        int seconds = args.length > 5 ? Integer.parseInt(args[5]) : 20;
+
+        File dir = Files.createTempDirectory("cache-bench").toFile();
+        File file = new File(dir, "users.json");
+        BenchData.writeSnapshot(file, accounts, transactions);
+        UserManager full = new UserManager(file.getPath());
+        full.saveAccounts(); // also writes users.json.idx
+        long workingSetMb = usedHeap() / (1024 * 1024);
+        System.out.printf("%d accounts x %d transactions: %d MB of heap with everything loaded, %.0f MB on disk%n",
+                accounts, transactions, workingSetMb, file.length() / 1e6);
+        full = null;
+
+        System.out.printf("running with -Xmx%dm (%.1fx smaller), %d cached accounts, %d threads%n",
+                heapMb, (double) workingSetMb / heapMb, cached, threads);
+        Process child = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-Xmx" + heapMb + "m", "-cp", System.getProperty("java.class.path"), "CacheBenchmark", "run",
+                file.getPath(), String.valueOf(cached), String.valueOf(threads), String.valueOf(seconds))
+                .inheritIO().start();
+        int exit = child.waitFor();
+
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+        if (exit != 0) System.exit(exit);
+    }
+
+    private static void run(String fileName, int cached, int threads, int seconds) throws Exception {
+        long start = System.nanoTime();
+        UserManager bank = new UserManager(fileName, cached);
+        TransactionEngine engine = new TransactionEngine(bank);
+        List<Account> accounts = bank.getAccounts();
+        System.out.printf("startup %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        LongAdder operations = new LongAdder();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            Thread worker = new Thread(() -> {
+                Random rand = new Random(seed);
+                while (true) { // daemon, stops with the JVM
+                    Account from = accounts.get(rand.nextInt(accounts.size()));
+                    Account to = accounts.get(rand.nextInt(accounts.size()));
+                    engine.transfer(from, to, 1);
+                    operations.increment();
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        System.out.printf("%6s %10s %10s %10s %12s %12s %10s%n", "second", "ops/s", "hit ratio", "evictions", "load p50 us", "load p99 us", "heap MB");
+        long lastOps = 0, lastHits = 0, lastMisses = 0, lastEvictions = 0;
+        for (int second = 1; second <= seconds; second++) {
+            Thread.sleep(1000);
+            long ops = operations.sum(), hits = Metrics.CACHE_HITS.get(), misses = Metrics.CACHE_MISSES.get();
+            long evictions = Metrics.CACHE_EVICTIONS.get();
+            double ratio = (double) (hits - lastHits) / Math.max(1, hits - lastHits + misses - lastMisses);
+            System.out.printf("%6d %10d %10.3f %10d %12.0f %12.0f %10d%n", second, ops - lastOps, ratio, evictions - lastEvictions,
+                    Metrics.LOAD_ACCOUNT.percentile(0.5) / 1e3, Metrics.LOAD_ACCOUNT.percentile(0.99) / 1e3,
+                    ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024));
+            lastOps = ops;
+            lastHits = hits;
+            lastMisses = misses;
+            lastEvictions = evictions;
+        }
+        System.out.printf("cache write backs %d, max heap %d MB%n", Metrics.CACHE_WRITE_BACKS.get(), Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,87 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compares the heap held by transaction history as Transaction objects against ColumnarTransactionStore,
+// and the time to sum every amount both ways
+// run: java -Xmx4g -cp out ColumnarBenchmark <transactions> <accounts>
+public class ColumnarBenchmark {
+    private static final String[] TYPES = {"Deposit", "Withdraw", "Transfer", "Incoming Transfer"};
+
+    public static void main(String[] args) {
+        int transactions = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int perAccount = transactions / accountCount;
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 9, 0);
+        System.out.printf("%d transactions over %d accounts%n", perAccount * accountCount, accountCount);
+
+        long before = usedHeap();
+        List<List<Transaction>> objects = new ArrayList<>(accountCount);
+        for (int i = 0; i < accountCount; i++) {
+            List<Transaction> history = new ArrayList<>();
+            for (int j = 0; j < perAccount; j++) {
+                history.add(new Transaction(TYPES[j & 3], 10.0 + j, start.plusSeconds((long) i * perAccount + j)));
+            }
+            objects.add(history);
+        }
+        long objectBytes = usedHeap() - before;
+        report("Transaction objects", objectBytes, perAccount * (long) accountCount);
+        timeSum("sum amounts (objects)", () -> {
+            long sum = 0;
+            for (List<Transaction> history : objects) {
+                for (Transaction t : history) sum += Account.toCents(t.getAmount());
+            }
+            return sum;
+        });
+        objects.clear();
+
+        before = usedHeap();
+        ColumnarTransactionStore store = new ColumnarTransactionStore();
+        List<ColumnarTransactionStore.AccountHistory> columns = new ArrayList<>(accountCount);
+        for (int i = 0; i < accountCount; i++) {
+            ColumnarTransactionStore.AccountHistory history = store.newHistory(i);
+            for (int j = 0; j < perAccount; j++) {
+                history.add(new Transaction(TYPES[j & 3], 10.0 + j, start.plusSeconds((long) i * perAccount + j)));
+            }
+            columns.add(history);
+        }
+        long columnBytes = usedHeap() - before;
+        report("Columnar store", columnBytes, store.size());
+        timeSum("sum amounts (views)", () -> {
+            long sum = 0;
+            for (List<Transaction> history : columns) {
+                for (Transaction t : history) sum += Account.toCents(t.getAmount());
+            }
+            return sum;
+        });
+        timeSum("sum amounts (columns)", () -> {
+            long sum = 0;
+            for (int row = 0, n = store.size(); row < n; row++) sum += store.amountCents(row);
+            return sum;
+        });
+        System.out.printf("Columnar store uses %.1fx less heap%n", (double) objectBytes / columnBytes);
+    }
+
+    interface Sum { long run(); }
+
+    private static void timeSum(String name, Sum sum) {
+        long result = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) { // best of 5, the first rounds warm up the JIT
+            long start = System.nanoTime();
+            result = sum.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("  %-24s %6d ms (sum %d)%n", name, best / 1_000_000, result);
+    }
+
+    private static void report(String name, long bytes, long transactions) {
+        System.out.printf("%-20s %7.1f MB, %5.1f bytes per transaction%n", name, bytes / 1e6, (double) bytes / transactions);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hammers TransactionEngine from many threads and checks that no money was created or lost,
+// then simulates a crash that leaves half a record at the end of the journal
+// run: java -cp out ConcurrencyStress <accounts> <threads> <operationsPerThread>
+public class ConcurrencyStress {
+
+    public static void main(String[] args) throws Exception {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+
+        File file = File.createTempFile("stress", ".json");
+        BenchData.writeSnapshot(file, accountCount, 1);
+        UserManager userManager = new UserManager(file.getPath());
+        TransactionEngine engine = new TransactionEngine(userManager);
+        List<Account> accounts = userManager.getAccounts();
+        double startTotal = total(accounts);
+
+        // whole dollar amounts keep the double sums exact
+        AtomicLong deposited = new AtomicLong();
+        AtomicLong withdrawn = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            pool.submit(() -> {
+                Random rand = new Random(seed);
+                start.await();
+                for (int i = 0; i < operations; i++) {
+                    Account a = accounts.get(rand.nextInt(accounts.size()));
+                    Account b = accounts.get(rand.nextInt(accounts.size()));
+                    int amount = 1 + rand.nextInt(20);
+                    int op = rand.nextInt(10);
+                    if (op == 0) {
+                        if (engine.deposit(a, amount)) deposited.addAndGet(amount);
+                    } else if (op == 1) {
+                        if (engine.withdraw(a, amount)) withdrawn.addAndGet(amount);
+                    } else {
+                        engine.transfer(a, b, amount);
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+        long millis = (System.nanoTime() - begin) / 1_000_000;
+
+        double expected = startTotal + deposited.get() - withdrawn.get();
+        double actual = total(accounts);
+        boolean ok = expected == actual;
+        for (Account account : accounts) {
+            if (account.getBalance() < 0 || account.getBalance() != replay(account)) {
+                System.out.println("Account " + Account.formatNumber(account.getAccountNumber()) + " does not match its history");
+                ok = false;
+            }
+        }
+
+        // a fresh manager must rebuild the same state from users.json and the journal
+        UserManager reloadedManager = new UserManager(file.getPath());
+        double reloaded = total(reloadedManager.getAccounts());
+        if (reloaded != actual) {
+            System.out.println("Reloaded total " + reloaded + " differs from " + actual);
+            ok = false;
+        }
+        reloadedManager.close();
+        ok &= tornTail(file, actual);
+
+        System.out.printf("%d ops on %d threads in %d ms, expected total %.2f, actual %.2f -> %s%n",
+                (long) threads * operations, threads, millis, expected, actual, ok ? "PASS" : "FAIL");
+        deleteStore(file);
+        if (!ok) System.exit(1);
+    }
+
+    // a crash mid-write leaves a record without its newline as the only thing in the journal; a deposit
+    // acknowledged after the restart must not be written onto that fragment and lost with it
+    static boolean tornTail(File file, double total) throws IOException {
+        File journal = new File(file.getPath().replace(".json", ".journal"));
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write("BALANCE\t123".getBytes(StandardCharsets.UTF_8));
+        }
+        UserManager restarted = new UserManager(file.getPath());
+        Account account = restarted.getAccounts().get(0);
+        boolean deposited = new TransactionEngine(restarted).deposit(account, 5);
+        restarted.close(); // no save, the deposit lives only in the journal
+
+        double recovered = total(new UserManager(file.getPath()).getAccounts());
+        boolean ok = deposited && recovered == total + 5;
+        System.out.println("Deposit after a torn journal tail " + (ok ? "survived the restart" : "WAS LOST, total " + recovered));
+        return ok;
+    }
+
+    static double total(List<Account> accounts) {
+        double sum = 0;
+        for (Account account : accounts) sum += account.getBalance();
+        return sum;
+    }
+
+    // balance implied by the account's transaction list
+    static double replay(Account account) {
+        double balance = 0;
+        for (Transaction t : account.getTransactions()) {
+            if (t.getType().equals("Deposit") || t.getType().equals("Incoming Transfer")) balance += t.getAmount();
+            else balance -= t.getAmount();
+        }
+        return balance;
+    }
+
+    static void deleteStore(File file) throws IOException {
+        String base = file.getPath().replace(".json", "");
+        new File(base + ".journal").delete();
+        file.delete();
+    }
+}
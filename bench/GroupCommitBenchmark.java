@@ -0,0 +1,45 @@
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+// Durable deposits per second as more threads share the journal's group commit
+// every deposit returns only after its record has been fsynced
+// run: java -cp out GroupCommitBenchmark <seconds per run>
+public class GroupCommitBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 3;
+
+        System.out.printf("%-8s | %s%n", "Threads", "durable ops/sec");
+        for (int threads : new int[] {1, 16, 64, 256}) {
+            File file = File.createTempFile("group-commit", ".json");
+            BenchData.writeSnapshot(file, 10_000, 0);
+            UserManager userManager = new UserManager(file.getPath());
+            TransactionEngine engine = new TransactionEngine(userManager);
+            List<Account> accounts = userManager.getAccounts();
+
+            long deadline = System.nanoTime() + (long) (seconds * 1e9);
+            long[] counts = new long[threads];
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                Thread worker = new Thread(() -> {
+                    int i = id;
+                    while (System.nanoTime() < deadline) {
+                        engine.deposit(accounts.get(i % accounts.size()), 1);
+                        i += threads;
+                        counts[id]++;
+                    }
+                    done.countDown();
+                });
+                worker.start();
+            }
+            done.await();
+
+            long total = 0;
+            for (long count : counts) total += count;
+            System.out.printf("%-8d | %.0f%n", threads, total / seconds);
+            ConcurrencyStress.deleteStore(file);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.File;
+import java.io.FileReader;
+import java.util.List;
+import java.util.Random;
+
+// Covers the core banking hot paths for every combination of account count and history length
+// run: java -Xmx8g -cp out HotPathBenchmark <accounts list> <transactions per account list>
+//   e.g. java -Xmx8g -cp out HotPathBenchmark 1000,100000 0,20 > bench_output.txt
+public class HotPathBenchmark {
+    private static final int LOOKUPS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        int[] accountCounts = Bench.ints(args.length > 0 ? args[0] : "1000,100000");
+        int[] transactionCounts = Bench.ints(args.length > 1 ? args[1] : "0,20");
+
+        Bench.header();
+        for (int accounts : accountCounts) {
+            for (int transactions : transactionCounts) {
+                run(accounts, transactions);
+            }
+        }
+    }
+
+    private static void run(int accountCount, int transactions) throws Exception {
+        File file = File.createTempFile("hot-path", ".json");
+        BenchData.writeSnapshot(file, accountCount, transactions);
+        UserManager userManager = new UserManager(file.getPath());
+        TransactionEngine engine = new TransactionEngine(userManager);
+        List<Account> accounts = userManager.getAccounts();
+
+        // random keys chosen up front so only the call itself is timed
+        Random rand = new Random(7);
+        String[] userNames = new String[LOOKUPS];
+        String[] freshNumbers = new String[LOOKUPS]; // numbers no account has, as registration checks them
+        Account[] senders = new Account[LOOKUPS];
+        Account[] recipients = new Account[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            userNames[i] = BenchData.userName(rand.nextInt(accountCount));
+            freshNumbers[i] = BenchData.accountNumber(accountCount + rand.nextInt(1_000_000));
+            senders[i] = accounts.get(rand.nextInt(accountCount));
+            recipients[i] = accounts.get(rand.nextInt(accountCount));
+        }
+
+        // whole store operations first, while the store is still exactly as generated
+        int storeCalls = accountCount * Math.max(transactions, 1) > 1_000_000 ? 1 : 5;
+        Bench.measure("saveAccounts", accountCount, transactions, storeCalls, i -> userManager.saveAccounts());
+        Bench.measure("parse", accountCount, transactions, storeCalls, i -> {
+            try (JsonAccountReader reader = new JsonAccountReader(new FileReader(file))) {
+                while (reader.nextAccount() != null) { }
+            }
+        });
+        // without users.json.idx a load parses all of users.json, with it a load reads only the index
+        new File(file.getPath() + ".idx").delete();
+        Bench.measure("loadAccounts/parse", accountCount, transactions, storeCalls, i -> new UserManager(file.getPath()));
+        userManager.saveAccounts(); // writes the index again
+        Bench.measure("loadAccounts/index", accountCount, transactions, storeCalls, i -> new UserManager(file.getPath()));
+
+        Bench.measure("login", accountCount, transactions, LOOKUPS, i -> userManager.login(userNames[i], "1234"));
+        Bench.measure("isAccountNumberUnique", accountCount, transactions, LOOKUPS, i -> userManager.isAccountNumberUnique(freshNumbers[i]));
+        Bench.measure("Account.deposit", accountCount, transactions, LOOKUPS, i -> senders[i].deposit(1));
+        Bench.measure("Account.withdraw", accountCount, transactions, LOOKUPS, i -> senders[i].withdraw(1));
+        for (Account account : accounts) account.depositCents(100_000_000); // so no transfer is refused
+        Bench.measure("transfer", accountCount, transactions, LOOKUPS / 10, i -> {
+            if (senders[i] != recipients[i]) engine.transfer(senders[i], recipients[i], 0.01);
+        });
+
+        ConcurrencyStress.deleteStore(file);
+    }
+}
@@ -0,0 +1,38 @@
+import java.io.File;
+import java.util.Collections;
+
+// Times a full integrity check of users.json at growing sizes, once on a clean store and once with one account
+// in 10,000 broken, which also pays for the second read that names the unpaired transfers
+// run: java -Xmx1g -cp out IntegrityBenchmark <accounts,...> <transactionsPerAccount> <threads>
+public class IntegrityBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = Bench.ints(args.length > 0 ? args[0] : "10000,100000,1000000");
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        IntegrityVerifier verifier = new IntegrityVerifier(threads);
+        System.out.println(transactions + " transactions per account, " + threads + " threads, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+
+        for (int accounts : sizes) {
+            for (int brokenEvery : new int[]{0, 10_000}) {
+                File file = File.createTempFile("integrity-bench", ".json");
+                BenchData.writeLedger(file, accounts, transactions, brokenEvery);
+                int broken = brokenEvery == 0 ? 0 : (accounts + brokenEvery - 1) / brokenEvery;
+
+                IntegrityVerifier.Result result = null;
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round < 3; round++) { // the first round warms up the JIT and the page cache
+                    result = verifier.verify(Collections.singletonList(file.getPath()));
+                    if (round > 0) best = Math.min(best, result.getMillis());
+                }
+                // each broken account is off in its balance, and its sender's transfer has no incoming side
+                if (result.getDiscrepancyCount() != 2L * broken) throw new IllegalStateException("expected " + 2 * broken + " discrepancies:\n" + result);
+                System.out.printf("%-8s %,10d accounts %,8.1f MB: %,7d ms, %,6.1f MB/s, %,9.0f accounts/s, %d discrepancies%n",
+                        brokenEvery == 0 ? "clean" : "broken", accounts, file.length() / 1e6, best,
+                        file.length() / 1e3 / Math.max(best, 1), accounts * 1000.0 / Math.max(best, 1), result.getDiscrepancyCount());
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// The original users.json parser from UserManager, kept only so LoadBenchmark can compare against it
+public class LegacyJsonParser {
+    private final List<Account> accounts = new ArrayList<>();
+
+    public static List<Account> load(String fileName) throws IOException {
+        LegacyJsonParser parser = new LegacyJsonParser();
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            StringBuilder jsonBuilder = new StringBuilder();
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                jsonBuilder.append(line);
+            }
+
+            parser.parseJson(jsonBuilder.toString()); // Convert from JSON to Account objects
+        }
+        return parser.accounts;
+    }
+
+    private void parseJson(String json) {
+        if (json.isEmpty() || json.equals("[]")) return;
+        // System.out.println("Parsing JSON data...");
+
+        try {
+            // remove the outer array brackets
+            json = json.substring(1, json.length() - 1);
+
+            // split individual account objects while respecting the structure 
+            List<String> accountStrings = splitAccountObjects(json);
+
+            // process each account object
+            for (String accountString : accountStrings) {
+                processAccountObject(accountString);
+            }
+
+        } catch (Exception e) {
+            System.out.println("Error parsing JSON: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void processAccountObject(String accountString) {
+
+        // find the values of each field in the account
+        String userName = extractValue(accountString, "userName");
+        String pin = extractValue(accountString, "pin");
+        String dateOfBirth = extractValue(accountString, "dateOfBirth");
+        double balance = Double.parseDouble(extractValue(accountString, "balance"));
+        String accountNumber = extractValue(accountString, "accountNumber");
+        String routingNumber = extractValue(accountString, "routingNumber");
+        
+        // create account instance
+        Account account = new Account(pin, userName, LocalDate.parse(dateOfBirth), balance, accountNumber, routingNumber);
+
+        List<Transaction> transactions = parseTransactions(accountString);
+
+        // set transactions and add account to list
+        account.setTransactions(transactions);
+        accounts.add(account);
+        // System.out.println("Account loaded: " + userName);
+    }
+
+    private List<Transaction> parseTransactions(String accountString) {
+        List<Transaction> transactions = new ArrayList<>();
+
+        // exctract transactions section from the json
+        String transactionString = accountString.substring(accountString.indexOf("\"transactions\"")); // extracts from the name to the end of string
+        transactionString = transactionString.substring(transactionString.indexOf("["), transactionString.lastIndexOf("]") + 1); // extracts the array of the transaction field
+
+        // process individual transactions if any exist
+        if (!transactionString.equals("[]")) {
+            String[] transactionArray = transactionString.split("\\{"); // split the array at the bracket and make it an array
+
+            for (String transString : transactionArray) {
+                if (transString.contains("type")) { // check if its a valid transaction object
+                    String type = extractValue(transString, "type");
+                    double amount = Double.parseDouble(extractValue(transString, "amount"));
+                    String dateTime = extractValue(transString, "dateTime");
+                    transactions.add(new Transaction(type, amount, LocalDateTime.parse(dateTime)));
+                }
+            }
+        }
+
+        return transactions;
+    }
+
+    private String extractValue(String json, String key){
+        int start = json.indexOf("\"" + key + "\""); // creates json pattern "userName"
+        if(start == -1) return null;
+
+        start = json.indexOf(":", start) + 1; // find where the start of the value is after the color
+        
+        // skip whitespace             // check if theres a space where start is at rn
+        while (start < json.length() && Character.isWhitespace(json.charAt(start))) {
+            start++;
+        }
+
+        boolean isString = json.charAt(start) == '"'; // check if the value is a string (String json starts with quotes)
+
+        if (isString) {
+            start++; // skipp the opening quote
+
+            // find the closing quote from the current position
+            int end = json.indexOf("\"", start); 
+            return json.substring(start, end);
+        } else {
+            // for numbers, read until it hits a non digit character
+            int end = start;
+            while (end < json.length() && (Character.isDigit(json.charAt(end)) || json.charAt(end) == '.')) {
+                end++; // keep looking for the end of the value       
+            }
+
+            return json.substring(start, end); // returns the value from after the color to the end of the value
+        }
+    }
+
+    private List<String> splitAccountObjects(String json) {
+        List<String> accountStrings = new ArrayList<>();
+        int depth = 0;
+        StringBuilder currentString = new StringBuilder();
+
+        // parse character by character to handle nested structures
+        for (char c : json.toCharArray()) {
+            currentString.append(c);
+            if (c == '{') depth++; // next indentation - main information
+            if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    // found a complete account object
+                    accountStrings.add(currentString.toString()); // convert the whole object to a single string to handle them separetely
+                    currentString = new StringBuilder(); // prepare a new string for the next iteration
+
+                }
+            }
+
+        }
+        return accountStrings; 
+        // returns list of accounts converted in strings meaning each index is an account
+    }
+}
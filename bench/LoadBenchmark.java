@@ -0,0 +1,57 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+// Compares startup time and heap use of the streaming reader against the original parser
+// run: java -Xmx8g -cp out LoadBenchmark <accounts> <transactionsPerAccount>
+public class LoadBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        File file = File.createTempFile("load-bench", ".json");
+        BenchData.writeSnapshot(file, accounts, transactions);
+        System.out.printf("%d accounts x %d transactions, %.1f MB%n", accounts, transactions, file.length() / 1e6);
+
+        for (int round = 0; round < 3; round++) { // the first round warms up the JIT
+            long[] legacy = measure(() -> LegacyJsonParser.load(file.getPath()).size());
+            long[] streaming = measure(() -> new UserManager(file.getPath()).getAccounts().size());
+            System.out.printf("round %d: legacy %d ms, %d MB peak | streaming %d ms, %d MB peak%n",
+                    round, legacy[0], legacy[1], streaming[0], streaming[1]);
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+
+    interface Load { int run() throws IOException; }
+
+    // returns elapsed millis and the highest heap use sampled while loading
+    private static long[] measure(Load load) throws IOException {
+        System.gc();
+        HeapSampler sampler = new HeapSampler();
+        sampler.start();
+        long start = System.nanoTime();
+        if (load.run() == 0) throw new IllegalStateException("nothing loaded");
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        sampler.interrupt();
+        return new long[] {millis, sampler.peak / (1024 * 1024)};
+    }
+
+    static class HeapSampler extends Thread {
+        volatile long peak;
+
+        HeapSampler() { setDaemon(true); }
+
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (!isInterrupted()) {
+                peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
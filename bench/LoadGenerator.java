@@ -0,0 +1,98 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+// Opens many client sessions against a running BankServer and reports latency percentiles and throughput
+// run: java -cp out LoadGenerator <clients> <operationsPerClient> [host] [port]
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        String host = args.length > 2 ? args[2] : "localhost";
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : BankServer.DEFAULT_PORT;
+
+        // usernames are unique per run so the generator can be pointed at the same store again
+        Random rand = new Random();
+        String run = "" + (char) ('a' + rand.nextInt(26)) + (char) ('a' + rand.nextInt(26));
+
+        String[] accountNumbers = new String[clients];
+        CountDownLatch registered = new CountDownLatch(clients);
+        ExecutorService pool = BankServer.newSessionExecutor();
+        List<Future<long[]>> results = new ArrayList<>();
+        long[] start = new long[1];
+
+        for (int c = 0; c < clients; c++) {
+            final int id = c;
+            results.add(pool.submit(() -> {
+                try (Socket socket = new Socket(host, port);
+                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                     PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+                    String userName = "l" + run + String.format("%06d", id);
+                    String reply = call(in, out, "REGISTER " + userName + " 1234 2000-01-01");
+                    if (!reply.startsWith("OK")) throw new IllegalStateException(reply);
+                    accountNumbers[id] = reply.substring(3);
+                    call(in, out, "LOGIN " + userName + " 1234");
+                    call(in, out, "DEPOSIT 1000");
+                    registered.countDown();
+                    registered.await(); // every account exists before anyone transfers
+
+                    Random ops = new Random(id);
+                    long[] latencies = new long[operations];
+                    for (int i = 0; i < operations; i++) {
+                        int op = ops.nextInt(10);
+                        String command;
+                        if (op < 4) command = "DEPOSIT 5";
+                        else if (op < 7) command = "WITHDRAW 3";
+                        else if (op < 9) command = "TRANSFER " + accountNumbers[ops.nextInt(clients)] + " 1";
+                        else command = "BALANCE";
+
+                        long begin = System.nanoTime();
+                        call(in, out, command);
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                    out.println("QUIT");
+                    return latencies;
+                }
+            }));
+        }
+
+        registered.await();
+        start[0] = System.nanoTime();
+        long[] all = new long[clients * operations];
+        int n = 0;
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            System.arraycopy(latencies, 0, all, n, latencies.length);
+            n += latencies.length;
+        }
+        double seconds = (System.nanoTime() - start[0]) / 1e9;
+        pool.shutdown();
+
+        Arrays.sort(all);
+        System.out.printf("%d clients x %d ops in %.2f s: %.0f ops/sec%n", clients, operations, seconds, all.length / seconds);
+        System.out.printf("latency p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6, all[all.length - 1] / 1e6);
+    }
+
+    // sends one command and reads its reply, including the extra lines HISTORY sends
+    private static String call(BufferedReader in, PrintWriter out, String command) throws IOException {
+        out.println(command);
+        String reply = in.readLine();
+        if (reply == null) throw new EOFException("server closed the connection");
+        if (command.equals("HISTORY") && reply.startsWith("OK ")) {
+            int lines = Integer.parseInt(reply.substring(3));
+            for (int i = 0; i < lines; i++) in.readLine();
+        }
+        return reply;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+}
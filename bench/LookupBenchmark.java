@@ -0,0 +1,58 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+// Measures login and account number lookup latency as the number of accounts grows
+// run: java -Xmx8g -cp out LookupBenchmark 1000 10000 100000 1000000 10000000
+public class LookupBenchmark {
+    private static final int LOOKUPS = 1_000_000;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[] {1_000, 10_000, 100_000, 1_000_000};
+        for (int i = 0; i < args.length; i++) sizes[i] = Integer.parseInt(args[i]);
+
+        System.out.printf("%-12s | %-14s | %-14s | %-14s%n", "Accounts", "login ns/op", "lookup ns/op", "text ns/op");
+        for (int size : sizes) {
+            File file = File.createTempFile("lookup-bench", ".json");
+            BenchData.writeSnapshot(file, size, 0);
+            UserManager userManager = new UserManager(file.getPath());
+
+            // pick the keys up front so the loop only measures the lookups
+            Random rand = new Random(42);
+            String[] userNames = new String[LOOKUPS];
+            int[] accountNumbers = new int[LOOKUPS];
+            String[] accountTexts = new String[LOOKUPS]; // as typed in or read from a file
+            for (int i = 0; i < LOOKUPS; i++) {
+                int n = rand.nextInt(size);
+                userNames[i] = BenchData.userName(n);
+                accountNumbers[i] = n;
+                accountTexts[i] = BenchData.accountNumber(n);
+            }
+
+            double loginNs = 0, lookupNs = 0, textNs = 0;
+            for (int round = 0; round < 5; round++) { // first rounds are warmup, the last one counts
+                long start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    if (userManager.login(userNames[i], "1234") == null) throw new IllegalStateException("login failed");
+                }
+                loginNs = (System.nanoTime() - start) / (double) LOOKUPS;
+
+                start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    if (userManager.findAccount(accountNumbers[i]) == null) throw new IllegalStateException("lookup failed");
+                }
+                lookupNs = (System.nanoTime() - start) / (double) LOOKUPS;
+
+                start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    if (userManager.findAccount(accountTexts[i]) == null) throw new IllegalStateException("lookup failed");
+                }
+                textNs = (System.nanoTime() - start) / (double) LOOKUPS;
+            }
+            System.out.printf("%-12d | %-14.1f | %-14.1f | %-14.1f%n", size, loginNs, lookupNs, textNs);
+
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+import java.lang.management.ManagementFactory;
+
+// Cost of recording into the metrics on the hot path, and a check that it allocates nothing
+// run: java -cp out MetricsBenchmark
+public class MetricsBenchmark {
+    private static final int CALLS = 10_000_000;
+
+    public static void main(String[] args) throws Exception {
+        Metrics.Histogram histogram = Metrics.histogram("bench");
+        Metrics.Counter counter = Metrics.counter("bench");
+
+        Bench.header();
+        Bench.measure("histogram.record", 0, 0, CALLS, i -> histogram.record(i & 0xFFFFF));
+        Bench.measure("histogram.recordSince", 0, 0, CALLS, i -> histogram.recordSince(System.nanoTime()));
+        Bench.measure("counter.increment", 0, 0, CALLS, i -> counter.increment());
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < CALLS; i++) {
+            histogram.recordSince(System.nanoTime());
+            counter.increment();
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        System.out.printf("allocated %d bytes over %d recordings%n", allocated, CALLS);
+    }
+}
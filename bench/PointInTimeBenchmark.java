@@ -0,0 +1,51 @@
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+// Balance of one account at a random moment of its history, by replaying every transaction up to that moment
+// (what answering it took before the checkpoints) against Account.balanceCentsAt, for growing histories
+// run: java -Xmx4g -cp out PointInTimeBenchmark <transactions,...>
+public class PointInTimeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = Bench.ints(args.length > 0 ? args[0] : "1000,100000,1000000");
+        LocalDateTime start = LocalDateTime.of(2020, 1, 1, 9, 0);
+
+        Bench.header();
+        for (int size : sizes) {
+            Account account = new Account("1234", BenchData.userName(0), null, 0.0, BenchData.accountNumber(0), "000000001");
+            for (int j = 0; j < size; j++) { // deposits and slightly smaller transfers, one a minute
+                double amount = 10 + j % 7;
+                String type = j % 3 == 2 ? "Transfer" : "Deposit";
+                if (type.equals("Transfer")) account.withdrawCents(Account.toCents(amount));
+                else account.depositCents(Account.toCents(amount));
+                account.addTransaction(new Transaction(type, amount, start.plusMinutes(j)));
+            }
+            List<Transaction> history = account.getTransactions();
+            long opening = account.getStatistics().getOpeningCents();
+
+            int queries = 1_000;
+            LocalDateTime[] times = new LocalDateTime[queries];
+            Random rand = new Random(42);
+            for (int i = 0; i < queries; i++) times[i] = start.plusMinutes(rand.nextInt(size)).plusSeconds(30);
+
+            long[] sink = new long[1];
+            for (int i = 0; i < queries; i++) { // both ways must agree before either is timed
+                if (replay(history, opening, times[i]) != account.balanceCentsAt(times[i])) throw new IllegalStateException("mismatch at " + times[i]);
+            }
+            Bench.measure("replay", 1, size, queries, i -> sink[0] += replay(history, opening, times[i]));
+            Bench.measure("checkpoint", 1, size, queries, i -> sink[0] += account.balanceCentsAt(times[i]));
+            if (sink[0] == 42) System.out.println(); // keeps the results alive
+        }
+    }
+
+    // walks the history from the start, the only way before the checkpoints
+    private static long replay(List<Transaction> history, long openingCents, LocalDateTime time) {
+        long balance = openingCents;
+        for (Transaction t : history) {
+            if (t.getDateTime().isAfter(time)) break;
+            balance += AccountStatistics.change(t.getType(), Account.toCents(t.getAmount()));
+        }
+        return balance;
+    }
+}
@@ -0,0 +1,47 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Times the end of day report over an in-memory bank at each thread count
+// run: java -Xmx8g -cp out ReportingBenchmark <accounts> <transactionsPerAccount> <threads,...>
+public class ReportingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int[] threadCounts = Bench.ints(args.length > 2 ? args[2] : "1,4,16");
+
+        // a spread of balances and of activity over the last 120 days, so every part of the report has work
+        LocalDate today = LocalDate.now();
+        List<Account> accounts = new ArrayList<>(accountCount);
+        for (int i = 0; i < accountCount; i++) {
+            Account account = new Account("1234", BenchData.userName(i), null, 0.0, BenchData.accountNumber(i), "000000001");
+            LocalDateTime time = today.minusDays(i % 120).atTime(9, 0);
+            for (int j = 0; j < transactions; j++) {
+                double amount = (i % 7 + 1) * Math.pow(10, i % 5);
+                if (j % 3 == 2) {
+                    account.withdrawCents(Account.toCents(amount));
+                    account.addTransaction(new Transaction("Transfer", amount, time.plusHours(j / 3)));
+                } else {
+                    account.depositCents(Account.toCents(amount));
+                    account.addTransaction(new Transaction("Deposit", amount, time.plusHours(j / 3)));
+                }
+            }
+            accounts.add(account);
+        }
+        System.out.println(accountCount + " accounts x " + transactions + " transactions, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+
+        Bench.header();
+        double single = 0;
+        for (int threads : threadCounts) {
+            ReportingEngine engine = new ReportingEngine(threads);
+            double nanos = Bench.measure("report/" + threads + " threads", accountCount, transactions, 1,
+                    i -> engine.run(accounts, today));
+            engine.shutdown();
+            if (single == 0) single = nanos;
+            System.out.printf("  speedup over %d thread(s): %.2fx%n", threadCounts[0], single / nanos);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs deposits, withdrawals and transfers from many threads over a ShardedUserManager, checks that no money
+// was created or lost and that a reload agrees, then simulates a crash part way through a cross-shard transfer
+// run: java -cp out ShardStress <shards> <accounts> <threads> <operationsPerThread>
+public class ShardStress {
+
+    public static void main(String[] args) throws Exception {
+        int shardCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int operations = args.length > 3 ? Integer.parseInt(args[3]) : 5_000;
+
+        File dir = Files.createTempDirectory("shards").toFile();
+        String fileName = new File(dir, "users.json").getPath();
+        ShardedUserManager bank = new ShardedUserManager(fileName, shardCount);
+        for (int i = 0; i < accountCount; i++) {
+            bank.addAccount(new Account("1234", BenchData.userName(i), LocalDate.of(2000, 1, 1), 0.0,
+                    bank.generateUniqueAccountNumber(), bank.generateRoutingNumber()));
+        }
+        List<Account> accounts = bank.getAccounts();
+        for (Account account : accounts) bank.deposit(account, 100);
+        double startTotal = ConcurrencyStress.total(accounts);
+
+        // whole dollar amounts keep the double sums exact
+        AtomicLong deposited = new AtomicLong();
+        AtomicLong withdrawn = new AtomicLong();
+        AtomicLong crossShard = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            pool.submit(() -> {
+                Random rand = new Random(seed);
+                start.await();
+                for (int i = 0; i < operations; i++) {
+                    Account a = accounts.get(rand.nextInt(accounts.size()));
+                    Account b = accounts.get(rand.nextInt(accounts.size()));
+                    int amount = 1 + rand.nextInt(20);
+                    int op = rand.nextInt(10);
+                    if (op == 0) {
+                        if (bank.deposit(a, amount)) deposited.addAndGet(amount);
+                    } else if (op == 1) {
+                        if (bank.withdraw(a, amount)) withdrawn.addAndGet(amount);
+                    } else if (bank.transfer(a, b, amount) && bank.shardOf(a.getAccountNumber()) != bank.shardOf(b.getAccountNumber())) {
+                        crossShard.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+        long millis = (System.nanoTime() - begin) / 1_000_000;
+
+        double expected = startTotal + deposited.get() - withdrawn.get();
+        double actual = ConcurrencyStress.total(accounts);
+        boolean ok = expected == actual;
+        for (Account account : accounts) {
+            if (account.getBalance() < 0 || account.getBalance() != ConcurrencyStress.replay(account)) {
+                System.out.println("Account " + Account.formatNumber(account.getAccountNumber()) + " does not match its history");
+                ok = false;
+            }
+        }
+
+        double reloaded = ConcurrencyStress.total(new ShardedUserManager(fileName, shardCount).getAccounts());
+        if (reloaded != actual) {
+            System.out.println("Reloaded total " + reloaded + " differs from " + actual);
+            ok = false;
+        }
+        System.out.printf("%d ops (%d cross-shard transfers) on %d threads over %d shards in %d ms, expected total %.2f, actual %.2f%n",
+                (long) threads * operations, crossShard.get(), threads, shardCount, millis, expected, actual);
+
+        // crash after phase one: both sides prepared and on disk, but no commit decision
+        if (shardCount > 1) {
+            ShardedUserManager crashed = new ShardedUserManager(fileName, shardCount);
+            Account from = null, to = null;
+            for (Account account : crashed.getAccounts()) {
+                if (from == null && account.getBalance() >= 10) from = account;
+                else if (from != null && crashed.shardOf(account.getAccountNumber()) != crashed.shardOf(from.getAccountNumber())) to = account;
+                if (to != null) break;
+            }
+            UserManager fromShard = crashed.getShard(crashed.shardOf(from.getAccountNumber()));
+            UserManager toShard = crashed.getShard(crashed.shardOf(to.getAccountNumber()));
+            from.withdrawCents(1000);
+            to.depositCents(1000);
+            fromShard.prepareTransfer("crash-test", from, new Transaction("Transfer", 10, LocalDateTime.now()));
+            toShard.prepareTransfer("crash-test", to, new Transaction("Incoming Transfer", 10, LocalDateTime.now()));
+            fromShard.awaitDurable();
+            toShard.awaitDurable();
+
+            ShardedUserManager recovered = new ShardedUserManager(fileName, shardCount);
+            double after = ConcurrencyStress.total(recovered.getAccounts());
+            boolean rolledBack = after == actual && recovered.findAccount(from.getAccountNumber()).getBalance() == from.getBalance() + 10;
+            System.out.println("Crash before the commit decision " + (rolledBack ? "left both sides untouched" : "LOST OR CREATED MONEY"));
+            ok &= rolledBack;
+        }
+
+        System.out.println(ok ? "PASS" : "FAIL");
+        for (File file : dir.listFiles()) file.delete();
+        dir.delete();
+        if (!ok) System.exit(1);
+    }
+}
@@ -0,0 +1,43 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+// Time from new UserManager to a logged in account, with the full parse and with users.json.idx,
+// for the same number of accounts and a growing history per account
+// run: java -Xmx8g -cp out StartupBenchmark <accounts>
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        System.out.printf("%-14s %10s %14s %14s%n", "transactions", "MB", "full parse ms", "index ms");
+        for (int transactions : new int[] {1, 10, 100}) {
+            File dir = Files.createTempDirectory("startup-bench").toFile();
+            File file = new File(dir, "users.json");
+            BenchData.writeSnapshot(file, accounts, transactions);
+            File index = new File(file.getPath() + ".idx");
+
+            long full = 0, indexed = 0;
+            for (int round = 0; round < 3; round++) { // the first round warms up the JIT
+                Files.deleteIfExists(index.toPath());
+                full = timeToLogin(file.getPath(), accounts);
+                new UserManager(file.getPath()).saveAccounts(); // writes users.json.idx
+                indexed = timeToLogin(file.getPath(), accounts);
+            }
+            System.out.printf("%-14d %10.1f %14d %14d%n", transactions, file.length() / 1e6, full, indexed);
+
+            for (File f : dir.listFiles()) f.delete();
+            dir.delete();
+        }
+    }
+
+    private static long timeToLogin(String fileName, int accounts) {
+        System.gc();
+        long start = System.nanoTime();
+        UserManager bank = new UserManager(fileName);
+        Account account = bank.login(BenchData.userName(accounts / 2), "1234");
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (account == null || account.getTransactions().isEmpty()) throw new IllegalStateException("login failed");
+        return millis;
+    }
+}
@@ -0,0 +1,44 @@
+import java.io.File;
+import java.io.IOException;
+
+// Compares file size and cold load time of users.json against the binary store
+// run: java -Xmx8g -cp out StorageBenchmark <accounts> <transactionsPerAccount>
+public class StorageBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        File json = File.createTempFile("storage-bench", ".json");
+        File binary = new File(json.getPath().replace(".json", ".bin"));
+        BenchData.writeSnapshot(json, accounts, transactions);
+        AccountStore jsonStore = AccountStore.forFile(json.getPath());
+        AccountStore binaryStore = AccountStore.forFile(binary.getPath());
+
+        // convert through the store interface, the same path StorageConverter takes
+        java.util.List<Account> loaded = new java.util.ArrayList<>();
+        jsonStore.load(loaded::add);
+        binaryStore.save(loaded);
+        loaded = null;
+
+        System.out.printf("%d accounts x %d transactions: json %,d bytes, binary %,d bytes (%.1fx smaller)%n",
+                accounts, transactions, json.length(), binary.length(), (double) json.length() / binary.length());
+
+        for (int round = 0; round < 3; round++) { // the first round warms up the JIT
+            long jsonMillis = time(jsonStore);
+            long binaryMillis = time(binaryStore);
+            System.out.printf("round %d: json %d ms, binary %d ms (%.1fx faster)%n",
+                    round, jsonMillis, binaryMillis, (double) jsonMillis / Math.max(binaryMillis, 1));
+        }
+        json.delete();
+        binary.delete();
+    }
+
+    private static long time(AccountStore store) throws IOException {
+        System.gc();
+        long[] count = new long[1];
+        long start = System.nanoTime();
+        store.load(account -> count[0] += account.getTransactions().size());
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,16 @@
+import bank.jmh.Balance;
+
+import java.time.LocalDate;
+
+// Account's compare-and-set balance, for bank.jmh.BalanceBenchmark
+public class AccountBalance implements Balance {
+    private final Account account = new Account("1234", "merchant", LocalDate.of(2000, 1, 1), 1_000_000, 1, 1);
+
+    public void credit(long cents) {
+        account.depositCents(cents);
+    }
+
+    public boolean debit(long cents) {
+        return account.withdrawCents(cents);
+    }
+}
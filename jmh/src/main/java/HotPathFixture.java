@@ -0,0 +1,104 @@
+import bank.jmh.HotPaths;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// A users.json of accountCount accounts with transactionsPerAccount deposits each, written by the real store
+// and opened by a UserManager, for the benchmarks in bank.jmh
+public class HotPathFixture implements HotPaths {
+    private static final int INPUTS = 1 << 16;
+
+    private final File dir;
+    private final String fileName;
+    private final UserManager userManager;
+    private final TransactionEngine engine;
+    private final String[] userNames = new String[INPUTS];
+    private final String[] freshNumbers = new String[INPUTS];
+    private final Account[] senders = new Account[INPUTS];
+    private final Account[] recipients = new Account[INPUTS];
+
+    public HotPathFixture(int accountCount, int transactionsPerAccount) throws IOException {
+        dir = Files.createTempDirectory("jmh-bank").toFile();
+        fileName = new File(dir, "users.json").getPath();
+
+        List<Account> generated = new ArrayList<>(accountCount);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 10, 0);
+        for (int i = 0; i < accountCount; i++) {
+            Account account = new Account("1234", "user" + i, LocalDate.of(2000, 1, 1), 0.0, UserManager.accountNumberAt(i), 1);
+            for (int j = 0; j < transactionsPerAccount; j++) {
+                account.depositCents(1000);
+                account.addTransaction(new Transaction("Deposit", 10.0, start.plusSeconds(j)));
+            }
+            generated.add(account);
+        }
+        AccountStore.forFile(fileName).save(generated);
+
+        userManager = new UserManager(fileName);
+        engine = new TransactionEngine(userManager);
+        List<Account> accounts = userManager.getAccounts();
+        for (Account account : accounts) account.depositCents(100_000_000); // so no withdrawal or transfer is refused
+
+        Random rand = new Random(7);
+        for (int i = 0; i < INPUTS; i++) {
+            userNames[i] = "user" + rand.nextInt(accountCount);
+            freshNumbers[i] = Account.formatNumber(UserManager.accountNumberAt(accountCount + rand.nextInt(1_000_000)));
+            senders[i] = accounts.get(rand.nextInt(accountCount));
+            Account recipient = accounts.get(rand.nextInt(accountCount));
+            recipients[i] = recipient != senders[i] ? recipient : accounts.get((accounts.indexOf(recipient) + 1) % accountCount);
+        }
+    }
+
+    public Object login(int i) {
+        return userManager.login(userNames[i], "1234");
+    }
+
+    public Object isAccountNumberUnique(int i) {
+        return userManager.isAccountNumberUnique(freshNumbers[i]);
+    }
+
+    public long deposit(int i) {
+        senders[i].deposit(1);
+        return senders[i].getBalanceCents();
+    }
+
+    public boolean withdraw(int i) {
+        return senders[i].withdraw(1);
+    }
+
+    public boolean transfer(int i) {
+        return engine.transfer(senders[i], recipients[i], 0.01);
+    }
+
+    public void saveAccounts() {
+        userManager.saveAccounts();
+    }
+
+    public Object loadAccounts() {
+        return new UserManager(fileName);
+    }
+
+    public int parseSnapshot() throws IOException {
+        int count = 0;
+        try (JsonAccountReader reader = new JsonAccountReader(new FileReader(fileName))) {
+            while (reader.nextAccount() != null) count++;
+        }
+        return count;
+    }
+
+    public int inputs() {
+        return INPUTS;
+    }
+
+    public void close() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,68 @@
+package bank.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Lookups and money movements on one account at a time, by store size and history length
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBenchmark {
+
+    @Param({"1000", "100000"})
+    public int accounts;
+
+    @Param({"0", "20"})
+    public int transactions;
+
+    private HotPaths store;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        store = Fixtures.open(accounts, transactions);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+    }
+
+    // the next of the fixture's random inputs, cycling
+    private int input() {
+        int i = next;
+        next = i + 1 == store.inputs() ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public Object login() {
+        return store.login(input());
+    }
+
+    @Benchmark
+    public Object isAccountNumberUnique() {
+        return store.isAccountNumberUnique(input());
+    }
+
+    @Benchmark
+    public long deposit() {
+        return store.deposit(input());
+    }
+
+    @Benchmark
+    public boolean withdraw() {
+        return store.withdraw(input());
+    }
+
+    // the blocking path Runner.fundTransfer takes, dominated by the journal's fsync
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean transfer() {
+        return store.transfer(input());
+    }
+}
@@ -0,0 +1,9 @@
+package bank.jmh;
+
+// One hot account's balance, in cents
+public interface Balance {
+
+    void credit(long cents);
+
+    boolean debit(long cents); // false if the balance does not cover it
+}
@@ -0,0 +1,67 @@
+package bank.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Account's compare-and-set balance against a synchronized double balance (what Account did before), with every
+// thread on the same hot account; nine credits for every debit, like a settlement account receiving payments
+// run with -t 1, -t 4 and -t 16 to see the contended cases
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceBenchmark {
+
+    static class SynchronizedBalance implements Balance {
+        private double balance = 1_000_000;
+
+        public synchronized void credit(long cents) {
+            balance += cents / 100.0;
+        }
+
+        public synchronized boolean debit(long cents) {
+            double amount = cents / 100.0;
+            if (amount > balance) return false;
+            balance -= amount;
+            return true;
+        }
+    }
+
+    private Balance synchronizedBalance;
+    private Balance atomicBalance;
+
+    @State(Scope.Thread)
+    public static class Sequence {
+        int next;
+
+        boolean debitNext() {
+            if (++next == 10) next = 0;
+            return next == 0;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        synchronizedBalance = new SynchronizedBalance();
+        atomicBalance = Fixtures.accountBalance();
+    }
+
+    @Benchmark
+    public boolean synchronizedDouble(Sequence sequence) {
+        return apply(synchronizedBalance, sequence);
+    }
+
+    @Benchmark
+    public boolean compareAndSet(Sequence sequence) {
+        return apply(atomicBalance, sequence);
+    }
+
+    private static boolean apply(Balance balance, Sequence sequence) {
+        if (sequence.debitNext()) return balance.debit(250);
+        balance.credit(125);
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package bank.jmh;
+
+// Creates the fixtures that live in the default package with the application
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static HotPaths open(int accounts, int transactions) throws Exception {
+        return (HotPaths) Class.forName("HotPathFixture").getConstructor(int.class, int.class).newInstance(accounts, transactions);
+    }
+
+    static Balance accountBalance() throws Exception {
+        return (Balance) Class.forName("AccountBalance").getConstructor().newInstance();
+    }
+}
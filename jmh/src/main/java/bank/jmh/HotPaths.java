@@ -0,0 +1,30 @@
+package bank.jmh;
+
+import java.io.IOException;
+
+// The banking operations the benchmarks time, over one generated store
+// JMH will not generate code for a benchmark in the default package and classes in a named package cannot
+// name the application's, so HotPathFixture (default package) implements this and is created by name
+public interface HotPaths {
+
+    // i picks one of a fixed set of random inputs made up front, so only the call itself is timed
+    Object login(int i);
+
+    Object isAccountNumberUnique(int i); // numbers no account has, as registration checks them
+
+    long deposit(int i); // Account.deposit, the balance after it
+
+    boolean withdraw(int i); // Account.withdraw
+
+    boolean transfer(int i); // TransactionEngine.transfer, what Runner.fundTransfer runs, waits for the journal fsync
+
+    void saveAccounts();
+
+    Object loadAccounts(); // a new UserManager over the store, through users.json.idx as a restart would
+
+    int parseSnapshot() throws IOException; // every account read by JsonAccountReader, as a start without the index
+
+    int inputs(); // how many different i there are
+
+    void close(); // deletes the store
+}
@@ -0,0 +1,50 @@
+package bank.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Whole store operations: a full save, a restart through the index and a full parse of users.json
+// (what a restart cost before the index, and still costs when the index is missing or stale)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StoreBenchmark {
+
+    @Param({"1000", "100000"})
+    public int accounts;
+
+    @Param({"0", "20"})
+    public int transactions;
+
+    private HotPaths store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        store = Fixtures.open(accounts, transactions);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+    }
+
+    @Benchmark
+    public void saveAccounts() {
+        store.saveAccounts();
+    }
+
+    @Benchmark
+    public Object loadAccounts() {
+        return store.loadAccounts();
+    }
+
+    @Benchmark
+    public int parseSnapshot() throws IOException {
+        return store.parseSnapshot();
+    }
+}
@@ -1,73 +1,437 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Account {
+    public static final double MAX_AMOUNT = 1_000_000_000.0; // largest single deposit, withdrawal or transfer, in dollars
     
     // user logging variables
     private String pin; // store securely
     private String userName; // has to be unique for each passengers
     private LocalDate dateOfBirth; //  yyyy-mm-dd
     
-    private double balance;
-    private String accountNumber;
-    private String routingNumber;
+    private final AtomicLong balanceCents; // whole cents so there is no rounding drift, updated without locks
+    private int accountNumber; // 9 digits, only turned into text for display and the files
+    private int routingNumber;
 
-    private List<Transaction> transactions;
+    private volatile History history; // null while it is only on disk, see AccountCache
+
+    // where the account was last written (users.json or the cache's spill file), null if it never was
+    private volatile JsonAccountIndex.Entry saved;
+    private volatile boolean partial; // loaded from the index alone, the pin, date of birth and routing number are still on disk
+    private volatile boolean changed; // changed since it was written to saved, balance moves are told apart by comparing balances
+    volatile boolean referenced; // used since the AccountCache clock hand last passed
+    volatile boolean cached; // holds a slot in the AccountCache
+
+    // the part of an account that can be dropped from memory and read back, swapped as a whole so
+    // a reader never sees a list without its statistics
+    static class History {
+        final List<Transaction> transactions;
+        final AccountStatistics statistics; // per day and per month totals, kept in step with transactions
+        TypeIndex types; // null until a query filters by type, guarded by the account
+
+        History(List<Transaction> transactions, AccountStatistics statistics) {
+            this.transactions = transactions;
+            this.statistics = statistics;
+        }
+    }
     
+    // for numbers read from text, e.g. users.json or the journal
     public Account(String pin, String userName, LocalDate dateOfBirth, double balance, String accountNumber, String routingNumber){
+        this(pin, userName, dateOfBirth, balance, parseNumber(accountNumber), parseNumber(routingNumber));
+    }
+
+    public Account(String pin, String userName, LocalDate dateOfBirth, double balance, int accountNumber, int routingNumber){
         this.pin = pin;
         this.userName = userName;
         this.dateOfBirth = dateOfBirth;
 
-        this.balance = balance;
+        this.balanceCents = new AtomicLong(toCents(balance));
         this.accountNumber = accountNumber;
         this.routingNumber = routingNumber;
-        this.transactions = new ArrayList<>();
+        this.history = new History(new ArrayList<>(), new AccountStatistics(balanceCents.get()));
+    }
+
+    // an account loaded from JsonAccountIndex, everything but the name, number and balance waits in the file
+    static Account shell(String userName, int accountNumber, JsonAccountIndex.Entry saved) {
+        Account account = new Account(null, userName, null, 0.0, accountNumber, 0);
+        account.balanceCents.set(saved.savedBalanceCents);
+        account.saved = saved;
+        account.partial = true;
+        account.history = null;
+        return account;
+    }
+
+    private History history() {
+        History h = history;
+        if (h == null) return load();
+        if (!referenced) referenced = true; // read first, so a hit does not dirty the cache line every time
+        Metrics.CACHE_HITS.increment();
+        return h;
     }
 
+    // reads whatever is only on disk, the balance is left alone since it may have moved since the write
+    // then gives the account a slot in the cache, outside the lock as the cache may evict another account
+    private History load() {
+        History h;
+        JsonAccountIndex.Entry entry;
+        synchronized (this) {
+            h = history;
+            if (h != null) return h;
+            long start = System.nanoTime();
+            entry = saved;
+            try {
+                Account full = entry.load();
+                if (entry.file.columns != null) entry.file.columns.adopt(full);
+                if (partial) {
+                    pin = full.pin;
+                    dateOfBirth = full.dateOfBirth;
+                    routingNumber = full.routingNumber;
+                    partial = false;
+                }
+                h = full.history;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error loading account " + formatNumber(accountNumber), e);
+            }
+            history = h;
+            Metrics.CACHE_MISSES.increment();
+            Metrics.LOAD_ACCOUNT.recordSince(start);
+        }
+        if (entry.file.cache != null) entry.file.cache.admit(this);
+        return h;
+    }
+
+    // called by AccountCache once the account lost its slot: drops the history, writing it out first
+    // if the copy at saved is out of date; false if it was given a slot again or is already out
+    synchronized boolean evict(AccountCache cache) throws IOException {
+        History h = history;
+        if (cached || h == null) return false;
+        if (changed || saved == null || saved.savedBalanceCents != h.statistics.getBalanceCents()) {
+            saved = cache.writeBack(this, h);
+            changed = false;
+        }
+        history = null;
+        return true;
+    }
+
+    // where this account can be copied from unchanged, null if it was never written
+    JsonAccountIndex.Entry getSavedEntry() { return changed ? null : saved; }
+
+    // after a save wrote the account to entry, called while no update can run
+    synchronized void relocate(JsonAccountIndex.Entry entry) {
+        saved = entry;
+        changed = false;
+    }
+
+    boolean isLoaded() { return history != null; }
+
     public String toString(){
         return "Account{" +
             "userName='" + userName + '\'' +
-            ", balance=" + balance +
-            ", accountNumber='" + accountNumber + '\'' +
-            ", routingNumber='" + routingNumber + '\'' +
+            ", balance=" + getBalance() +
+            ", accountNumber='" + formatNumber(accountNumber) + '\'' +
+            ", routingNumber='" + formatNumber(getRoutingNumber()) + '\'' +
             '}' + "\n";
     }
     
     // getter methods
     public String getUserName(){ return userName; }
-    public String getPin() { return pin; }
-    public double getBalance() { return balance; }
-    public LocalDate getDateOfBirth() { return dateOfBirth; }
-    public String getAccountNumber() { return accountNumber; }
-    public String getRoutingNumber() { return routingNumber; }
-    public List<Transaction> getTransactions() { return transactions; }
+    public String getPin() { if (partial) history(); return pin; }
+    public double getBalance() { return balanceCents.get() / 100.0; }
+    public long getBalanceCents() { return balanceCents.get(); }
+    public LocalDate getDateOfBirth() { if (partial) history(); return dateOfBirth; }
+    public int getAccountNumber() { return accountNumber; }
+    public int getRoutingNumber() { if (partial) history(); return routingNumber; }
+    public List<Transaction> getTransactions() { return history().transactions; }
+    public AccountStatistics getStatistics() { return history().statistics; }
+
+    // same as getStatistics without giving the account a cache slot, for passes over every account that would
+    // otherwise push all the others out; an account only on disk is read back for them and dropped again
+    AccountStatistics peekStatistics() {
+        JsonAccountIndex.Entry entry;
+        synchronized (this) {
+            History h = history;
+            if (h != null) return h.statistics;
+            entry = saved;
+        }
+        try {
+            return entry.load().history.statistics;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error loading account " + formatNumber(accountNumber), e);
+        }
+    }
+
+    // same as getTransactions().size() without loading the history
+    public int getTransactionCount() {
+        History h = history;
+        if (h != null) return h.transactions.size();
+        synchronized (this) {
+            h = history;
+            return h != null ? h.transactions.size() : saved.transactionCount;
+        }
+    }
     
     // setter methods
-    public void setPin(String pin) { this.pin = pin; }
-    public void setBalance(double balance) { this.balance = balance; }
-    public void setAccountNumber(String accountNumber) { this.accountNumber = accountNumber; }
-    public void setRoutingNumber(String routingNumber) { this.routingNumber = routingNumber; }
-    public void setTransactions(List<Transaction> transactions) { this.transactions = transactions; }
+    public void setPin(String pin) {
+        if (partial) history();
+        synchronized (this) {
+            this.pin = pin;
+            changed = true;
+        }
+    }
+    public void setBalance(double balance) { balanceCents.set(toCents(balance)); }
+    public synchronized void setAccountNumber(int accountNumber) {
+        this.accountNumber = accountNumber;
+        changed = true;
+    }
+    public void setRoutingNumber(int routingNumber) {
+        if (partial) history();
+        synchronized (this) {
+            this.routingNumber = routingNumber;
+            changed = true;
+        }
+    }
+
+    // the statistics are worked out again from the history, call this after the balance is set
+    public void setTransactions(List<Transaction> transactions) {
+        setTransactions(transactions, AccountStatistics.rebuild(getBalanceCents(), transactions));
+    }
+
+    // for stores that saved the statistics along with the history
+    public void setTransactions(List<Transaction> transactions, AccountStatistics statistics) {
+        if (partial) history();
+        synchronized (this) {
+            history = new History(transactions, statistics);
+            changed = true;
+        }
+    }
 
+    // under the lock, so the cache cannot write the history out half way through and lose the addition
+    // a transaction dated before the last one (the wall clock stepped back) takes the last one's time, so the
+    // history stays in time order for the binary searches below; callers journal it after this, clamped
     public void addTransaction(Transaction transaction){
-        transactions.add(transaction);
+        while (true) {
+            History h = history();
+            synchronized (this) {
+                if (history != h) continue; // written out and dropped in between, load it again
+                if (!h.transactions.isEmpty()) {
+                    LocalDateTime last = h.transactions.get(h.transactions.size() - 1).getDateTime();
+                    if (transaction.getDateTime().isBefore(last)) transaction.setDateTime(last);
+                }
+                h.transactions.add(transaction);
+                h.statistics.record(transaction);
+                if (h.types != null) h.types.add(transaction.getType(), h.transactions.size() - 1);
+                changed = true;
+                return;
+            }
+        }
+    }
+
+    // one page of history matching the query, the list is kept in time order (see addTransaction) so the
+    // range ends are found by binary search; the range is then walked from the cursor until the page is full,
+    // so without filters a page costs O(log n + limit). A type filter walks only the positions of those types
+    // (see TypeIndex), also O(log n + limit); an amount filter is checked entry by entry, and one that matches
+    // little can walk the whole range, O(log n + range)
+    public TransactionPage queryTransactions(TransactionQuery query) {
+        History h = history();
+        List<Transaction> history = h.transactions;
+        int low = query.getFrom() == null ? 0 : firstAtOrAfter(history, query.getFrom());
+        int high = query.getTo() == null ? history.size() : firstAtOrAfter(history, query.getTo()); // exclusive
+        if (query.getTypes() != null) return queryByType(typeIndex(h), history, query, low, high);
+
+        List<Transaction> page = new ArrayList<>(Math.min(query.getLimit(), Math.max(0, high - low)));
+        int i;
+        if (query.isNewestFirst()) {
+            i = query.getCursor() == -1 ? high - 1 : Math.min(query.getCursor(), high - 1);
+            for (; i >= low && page.size() < query.getLimit(); i--) {
+                if (query.matches(history.get(i))) page.add(history.get(i));
+            }
+            return new TransactionPage(page, i >= low ? i : -1);
+        }
+        i = query.getCursor() == -1 ? low : Math.max(query.getCursor(), low);
+        for (; i < high && page.size() < query.getLimit(); i++) {
+            if (query.matches(history.get(i))) page.add(history.get(i));
+        }
+        return new TransactionPage(page, i < high ? i : -1);
+    }
+
+    // the same walk over the merged positions of the wanted types, the cursor is a position in the history as above
+    private static TransactionPage queryByType(TypeIndex index, List<Transaction> history, TransactionQuery query, int low, int high) {
+        List<TypeIndex.Positions> lists = new ArrayList<>();
+        for (String type : query.getTypes()) {
+            TypeIndex.Positions positions = index.get(type);
+            if (positions != null) lists.add(positions);
+        }
+        boolean newestFirst = query.isNewestFirst();
+        int start = newestFirst ? (query.getCursor() == -1 ? high - 1 : Math.min(query.getCursor(), high - 1))
+                : (query.getCursor() == -1 ? low : Math.max(query.getCursor(), low));
+        int[] next = new int[lists.size()]; // per type, the index of its next position to look at
+        for (int t = 0; t < next.length; t++) {
+            int first = lists.get(t).firstAtOrAfter(newestFirst ? start + 1 : start);
+            next[t] = newestFirst ? first - 1 : first;
+        }
+
+        List<Transaction> page = new ArrayList<>(Math.min(query.getLimit(), Math.max(0, high - low)));
+        while (true) {
+            int pick = -1, position = -1; // the type whose next position comes first in the walk
+            for (int t = 0; t < next.length; t++) {
+                TypeIndex.Positions positions = lists.get(t);
+                if (next[t] < 0 || next[t] >= positions.size) continue;
+                int p = positions.items[next[t]];
+                if (newestFirst ? p < low : p >= high) continue;
+                if (pick == -1 || (newestFirst ? p > position : p < position)) {
+                    pick = t;
+                    position = p;
+                }
+            }
+            if (pick == -1 || page.size() == query.getLimit()) return new TransactionPage(page, position);
+            next[pick] += newestFirst ? -1 : 1;
+            if (query.matches(history.get(position))) page.add(history.get(position));
+        }
+    }
+
+    private TypeIndex typeIndex(History h) {
+        synchronized (this) { // the same lock addTransaction keeps it up to date under
+            if (h.types == null) h.types = TypeIndex.build(h.transactions);
+            return h.types;
+        }
+    }
+
+    // positions in the history of each transaction type in ascending order, built the first time a page is
+    // filtered by type and extended by addTransaction from then on, 4 bytes a transaction
+    static class TypeIndex {
+        static class Positions {
+            int[] items = new int[16];
+            int size;
+
+            // index of the first item at or after position, or size if there is none
+            int firstAtOrAfter(int position) {
+                int low = 0, high = size;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (items[mid] < position) low = mid + 1;
+                    else high = mid;
+                }
+                return low;
+            }
+        }
+
+        private final Map<String, Positions> byType = new HashMap<>();
+
+        static TypeIndex build(List<Transaction> transactions) {
+            TypeIndex index = new TypeIndex();
+            for (int i = 0; i < transactions.size(); i++) index.add(transactions.get(i).getType(), i);
+            return index;
+        }
+
+        void add(String type, int position) {
+            Positions positions = byType.computeIfAbsent(type, k -> new Positions());
+            if (positions.size == positions.items.length) positions.items = Arrays.copyOf(positions.items, positions.size * 2);
+            positions.items[positions.size++] = position;
+        }
+
+        Positions get(String type) {
+            return byType.get(type);
+        }
+    }
+
+    // balance once every transaction up to and including dateTime had happened, for statements and audits
+    // the place in the history is found by binary search, then at most CHECKPOINT_INTERVAL - 1 transactions
+    // are replayed from the checkpoint before it
+    public long balanceCentsAt(LocalDateTime dateTime) {
+        History h = history();
+        return h.statistics.balanceAfter(h.transactions, firstAtOrAfter(h.transactions, dateTime.plusNanos(1)));
+    }
+
+    // balance right after the count-th transaction, before the first when count is 0
+    public long balanceCentsAfter(int count) {
+        History h = history();
+        if (count < 0 || count > h.transactions.size()) throw new IndexOutOfBoundsException("Count: " + count);
+        return h.statistics.balanceAfter(h.transactions, count);
+    }
+
+    // index of the first transaction at or after dateTime, or size() if there is none
+    private static int firstAtOrAfter(List<Transaction> history, LocalDateTime dateTime) {
+        int low = 0, high = history.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (history.get(mid).getDateTime().isBefore(dateTime)) low = mid + 1;
+            else high = mid;
+        }
+        return low;
     }
 
     public void deposit(double amount){
-        if (amount > 0) {
-            balance += amount;
+        if (isValidAmount(amount)) {
+            depositCents(toCents(amount));
         } else {
             System.out.println("Deposit amount must be positive.");
         }
     }
 
-    public void withdraw(double amount){
-        if (amount <= balance) {
-            balance -= amount;
+    // returns false and leaves the balance alone if it does not cover the amount
+    public boolean withdraw(double amount){
+        if (!isValidAmount(amount)) {
+            System.out.println("Withdrawal amount must be positive.");
+            return false;
+        }
+        if (withdrawCents(toCents(amount))) {
+            return true;
         } else {
             System.out.println("Insufficient Funds.");
+            return false;
+        }
+    }
+
+    // throws ArithmeticException and leaves the balance alone if it would pass Long.MAX_VALUE cents
+    public void depositCents(long cents) {
+        while (true) {
+            long current = balanceCents.get();
+            if (balanceCents.compareAndSet(current, Math.addExact(current, cents))) return;
+        }
+    }
+
+    // compare-and-set loop: the overdraft check and the debit happen as one atomic step
+    public boolean withdrawCents(long cents) {
+        while (true) {
+            long current = balanceCents.get();
+            if (cents > current) return false;
+            if (balanceCents.compareAndSet(current, current - cents)) return true;
+        }
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    // whether one deposit, withdrawal or transfer may move this amount: at least a cent and at most MAX_AMOUNT,
+    // so NaN, infinities and amounts toCents would saturate are all refused before they reach a balance
+    public static boolean isValidAmount(double amount) {
+        return amount <= MAX_AMOUNT && toCents(amount) > 0;
+    }
+
+    // the 9-digit text form, zero padded
+    public static String formatNumber(int number) {
+        String digits = Integer.toString(number); // String.format is too slow to run for every account
+        return digits.length() >= 9 ? digits : "000000000".substring(digits.length()) + digits;
+    }
+
+    // throws NumberFormatException unless number is 1 to 9 digits
+    public static int parseNumber(String number) {
+        if (number == null || number.isEmpty() || number.length() > 9) throw new NumberFormatException("Not a 9-digit number: " + number);
+        int value = 0;
+        for (int i = 0; i < number.length(); i++) {
+            int digit = number.charAt(i) - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException("Not a 9-digit number: " + number);
+            value = value * 10 + digit;
         }
+        return value;
     }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Bounds how many accounts keep their history in memory when UserManager is given a cache size
+//
+// every account stays known by name, number and balance (a few dozen bytes), only the history and statistics
+// come and go: an account read from disk takes a slot, and when the slots are full the clock hand picks one
+// not used since its last pass (CLOCK, the usual cheap stand-in for LRU: a hit only sets a flag, no list is
+// reordered under a lock). A victim changed since it was last written is appended to the spill file first,
+// so the on-disk store is users.json plus the spill as a log of newer copies, with the offsets held by the
+// accounts themselves. The journal still holds every change, the spill is scratch and starts empty each
+// run, and every save writes users.json afresh and truncates it
+public class AccountCache {
+    private final Account[] ring; // slots, walked by the clock hand
+    private int hand;
+    private volatile int used; // slots taken, read by the gauge
+    private final String spillName;
+    private JsonAccountIndex spill;
+
+    // write backs share the read side, a save takes the write side while it moves every account to the new users.json
+    private final ReentrantReadWriteLock spillLock = new ReentrantReadWriteLock();
+
+    public AccountCache(String fileName, int capacity) throws IOException {
+        this.ring = new Account[capacity];
+        this.spillName = fileName + ".spill";
+        this.spill = JsonAccountIndex.createSpill(spillName, this);
+        String labels = Metrics.label("store", fileName); // dropped with the owning UserManager's, see close()
+        Metrics.gauge("cache_capacity", labels, () -> capacity);
+        Metrics.gauge("cache_size", labels, () -> used);
+    }
+
+    // gives a freshly loaded account a slot, evicting the one the clock hand settles on
+    void admit(Account account) {
+        Account victim = null;
+        synchronized (this) {
+            if (account.cached) return;
+            while (ring[hand] != null) {
+                Account current = ring[hand];
+                if (!current.referenced) {
+                    current.cached = false;
+                    victim = current;
+                    break;
+                }
+                current.referenced = false; // second chance, it goes if still unused next time round
+                hand = (hand + 1) % ring.length;
+            }
+            if (victim == null) used++;
+            ring[hand] = account;
+            account.cached = true;
+            account.referenced = false; // has to be used again within one lap to stay
+            hand = (hand + 1) % ring.length;
+        }
+        if (victim != null) evict(victim);
+    }
+
+    // after a full save every account is clean, so accounts that were read in full (no index yet, or
+    // journal replay) can be handed to the cache and most of them dropped without writing anything
+    void admitAll(List<Account> accounts) {
+        for (Account account : accounts) {
+            if (account.isLoaded() && !account.cached) admit(account);
+        }
+    }
+
+    private void evict(Account victim) {
+        spillLock.readLock().lock();
+        try {
+            if (victim.evict(this)) Metrics.CACHE_EVICTIONS.increment();
+        } catch (IOException e) {
+            // the account keeps its history, it is only out of the cache's count until it is admitted again
+            System.out.println("Error writing account to " + spillName + ": " + e.getMessage());
+        } finally {
+            spillLock.readLock().unlock();
+        }
+    }
+
+    // called by Account.evict with the account locked
+    JsonAccountIndex.Entry writeBack(Account account, Account.History history) throws IOException {
+        byte[] json = JsonAccountWriter.toJson(account, history);
+        Metrics.CACHE_WRITE_BACKS.increment();
+        return spill.append(json, history.statistics.getBalanceCents(), history.transactions.size());
+    }
+
+    // held by a save from before it points the accounts at the new users.json until the spill is truncated
+    void lockWriteBacks() {
+        spillLock.writeLock().lock();
+    }
+
+    void unlockWriteBacks() {
+        spillLock.writeLock().unlock();
+    }
+
+    // once no account reads from the spill any more
+    void clearSpill() throws IOException {
+        spill.close();
+        spill = JsonAccountIndex.createSpill(spillName, this);
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Account number to Account index using open addressing over a plain int[] of keys,
+// so a lookup hashes one int and compares ints instead of hashing and comparing Strings
+//
+// puts are synchronized, gets take no lock: a value slot is written (volatile) after its key,
+// so a get that finds the value sees the whole account. A get that finds nothing, or a key
+// without its value yet, checks again under the lock so it never misses a finished put
+public class AccountNumberMap {
+    private static final int EMPTY = -1; // account numbers are never negative
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private static class Table {
+        final int[] keys;
+        final AtomicReferenceArray<Account> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table = new Table(1024);
+    private int size; // guarded by this
+
+    public Account get(int accountNumber) {
+        Account account = probe(table, accountNumber);
+        if (account != null) return account;
+        synchronized (this) {
+            return probe(table, accountNumber);
+        }
+    }
+
+    // returns the account that was already stored under this number, if any
+    public synchronized Account put(int accountNumber, Account account) {
+        if (accountNumber < 0) throw new IllegalArgumentException("Negative account number: " + accountNumber);
+        if (size + 1 > table.keys.length * LOAD_FACTOR) resize();
+
+        Table t = table;
+        int slot = insertSlot(t, accountNumber);
+        Account previous = t.values.get(slot);
+        if (t.keys[slot] == EMPTY) {
+            t.keys[slot] = accountNumber;
+            size++;
+        }
+        t.values.set(slot, account);
+        return previous;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static Account probe(Table t, int accountNumber) {
+        for (int slot = hash(accountNumber) & t.mask; ; slot = (slot + 1) & t.mask) {
+            int key = t.keys[slot];
+            if (key == accountNumber) return t.values.get(slot); // null if the put is still in progress
+            if (key == EMPTY) return null;
+        }
+    }
+
+    private static int insertSlot(Table t, int accountNumber) {
+        int slot = hash(accountNumber) & t.mask;
+        while (t.keys[slot] != EMPTY && t.keys[slot] != accountNumber) slot = (slot + 1) & t.mask;
+        return slot;
+    }
+
+    // readers still on the old table keep finding everything that was in it
+    private void resize() {
+        Table old = table;
+        Table grown = new Table(old.keys.length * 2);
+        for (int i = 0; i < old.keys.length; i++) {
+            if (old.keys[i] != EMPTY) {
+                int slot = insertSlot(grown, old.keys[i]);
+                grown.keys[slot] = old.keys[i];
+                grown.values.set(slot, old.values.get(i));
+            }
+        }
+        table = grown;
+    }
+
+    // account numbers are often sequential, spread them over the whole table
+    private static int hash(int accountNumber) {
+        int h = accountNumber * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,192 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Running totals for one account, kept per day and per month and updated as each transaction is added
+// so statements never have to walk the full history
+// only the day buckets are stored, the month buckets are rebuilt from them on load
+//
+// the balance is also checkpointed after every CHECKPOINT_INTERVAL transactions, so the balance at any point
+// in the history is the checkpoint before it plus fewer than CHECKPOINT_INTERVAL transactions replayed
+public class AccountStatistics {
+    public static final int CHECKPOINT_INTERVAL = 64; // 8 bytes per 64 transactions
+
+    private final long openingCents; // balance before the first transaction
+    private long balanceCents; // balance after the last transaction
+    private int transactionCount; // transactions recorded so far
+    private long[] checkpoints = new long[0]; // [i] is the balance after transaction (i + 1) * CHECKPOINT_INTERVAL
+    private int checkpointCount;
+    private final TreeMap<Long, Bucket> days = new TreeMap<>(); // keyed by epoch day
+    private final TreeMap<YearMonth, Bucket> months = new TreeMap<>();
+
+    public AccountStatistics(long openingCents) {
+        this.openingCents = openingCents;
+        this.balanceCents = openingCents;
+    }
+
+    // statistics for a history that was loaded without them, currentCents is the balance after the last entry
+    public static AccountStatistics rebuild(long currentCents, List<Transaction> transactions) {
+        long net = 0;
+        for (Transaction t : transactions) net += change(t.getType(), Account.toCents(t.getAmount()));
+
+        AccountStatistics statistics = new AccountStatistics(currentCents - net);
+        for (Transaction t : transactions) statistics.record(t);
+        return statistics;
+    }
+
+    public void record(Transaction transaction) {
+        long cents = Account.toCents(transaction.getAmount());
+        balanceCents += change(transaction.getType(), cents);
+        if (++transactionCount % CHECKPOINT_INTERVAL == 0) addCheckpoint(balanceCents);
+
+        LocalDate date = transaction.getDateTime().toLocalDate();
+        days.computeIfAbsent(date.toEpochDay(), d -> new Bucket()).add(transaction.getType(), cents, balanceCents);
+        months.computeIfAbsent(YearMonth.from(date), m -> new Bucket()).add(transaction.getType(), cents, balanceCents);
+    }
+
+    // used by the stores when reading saved statistics back, days must come in date order
+    void putDay(long epochDay, Bucket bucket) {
+        days.put(epochDay, bucket);
+        months.computeIfAbsent(YearMonth.from(LocalDate.ofEpochDay(epochDay)), m -> new Bucket()).merge(bucket);
+        balanceCents = bucket.closingCents;
+    }
+
+    // used by the stores after the days, the checkpoints in order
+    void putCheckpoints(int transactionCount, long[] checkpoints) {
+        this.transactionCount = transactionCount;
+        for (long checkpoint : checkpoints) addCheckpoint(checkpoint);
+    }
+
+    private void addCheckpoint(long cents) {
+        if (checkpointCount == checkpoints.length) checkpoints = Arrays.copyOf(checkpoints, Math.max(4, checkpointCount * 2));
+        checkpoints[checkpointCount++] = cents;
+    }
+
+    // whether saved statistics still fit the history saved with them, files written before the checkpoints
+    // have no transaction count, so any account with history in them is rebuilt on load
+    public boolean matches(long currentCents, int transactionCount) {
+        return balanceCents == currentCents && this.transactionCount == transactionCount
+                && checkpointCount == transactionCount / CHECKPOINT_INTERVAL;
+    }
+
+    // balance after the first count transactions of the history these statistics were recorded from
+    public long balanceAfter(List<Transaction> transactions, int count) {
+        int checkpoint = Math.min(count / CHECKPOINT_INTERVAL, checkpointCount);
+        long balance = checkpoint == 0 ? openingCents : checkpoints[checkpoint - 1];
+        for (int i = checkpoint * CHECKPOINT_INTERVAL; i < count; i++) {
+            Transaction t = transactions.get(i);
+            balance += change(t.getType(), Account.toCents(t.getAmount()));
+        }
+        return balance;
+    }
+
+    // balance at the end of the given day
+    public long balanceAt(LocalDate date) {
+        Map.Entry<Long, Bucket> last = days.floorEntry(date.toEpochDay());
+        return last == null ? openingCents : last.getValue().closingCents;
+    }
+
+    // mean of the end of day balances over [from, to), walking only the days that had transactions
+    public long averageBalanceCents(LocalDate from, LocalDate to) {
+        long start = from.toEpochDay(), end = to.toEpochDay();
+        if (end <= start) return balanceAt(from);
+
+        long balance = balanceAt(from.minusDays(1));
+        long previous = start;
+        long sum = 0;
+        for (Map.Entry<Long, Bucket> day : days.subMap(start, true, end, false).entrySet()) {
+            sum += balance * (day.getKey() - previous); // days without transactions keep the last balance
+            balance = day.getValue().closingCents;
+            previous = day.getKey();
+        }
+        sum += balance * (end - previous);
+        return Math.round((double) sum / (end - start));
+    }
+
+    public long getOpeningCents() { return openingCents; }
+    public long getBalanceCents() { return balanceCents; }
+    public int getTransactionCount() { return transactionCount; }
+    public int getCheckpointCount() { return checkpointCount; }
+    public long getCheckpoint(int index) { return checkpoints[index]; }
+    public NavigableMap<Long, Bucket> getDays() { return Collections.unmodifiableNavigableMap(days); }
+    public NavigableMap<YearMonth, Bucket> getMonths() { return Collections.unmodifiableNavigableMap(months); }
+
+    // how a transaction of this type moves the balance
+    static long change(String type, long cents) {
+        switch (type) {
+            case "Deposit":
+            case "Incoming Transfer":
+                return cents;
+            case "Withdraw":
+            case "Transfer":
+                return -cents;
+            default:
+                return 0;
+        }
+    }
+
+    // totals for one day or one month, amounts in cents
+    public static class Bucket {
+        int deposits, withdrawals, transfersOut, transfersIn;
+        long depositedCents, withdrawnCents, transferredOutCents, transferredInCents;
+        long largestTransferCents; // biggest single transfer either way
+        long closingCents; // balance after the last transaction in the bucket
+
+        void add(String type, long cents, long balanceAfter) {
+            switch (type) {
+                case "Deposit":
+                    deposits++;
+                    depositedCents += cents;
+                    break;
+                case "Withdraw":
+                    withdrawals++;
+                    withdrawnCents += cents;
+                    break;
+                case "Transfer":
+                    transfersOut++;
+                    transferredOutCents += cents;
+                    largestTransferCents = Math.max(largestTransferCents, cents);
+                    break;
+                case "Incoming Transfer":
+                    transfersIn++;
+                    transferredInCents += cents;
+                    largestTransferCents = Math.max(largestTransferCents, cents);
+                    break;
+                default:
+                    break;
+            }
+            closingCents = balanceAfter;
+        }
+
+        // folds a later bucket into this one
+        void merge(Bucket later) {
+            deposits += later.deposits;
+            withdrawals += later.withdrawals;
+            transfersOut += later.transfersOut;
+            transfersIn += later.transfersIn;
+            depositedCents += later.depositedCents;
+            withdrawnCents += later.withdrawnCents;
+            transferredOutCents += later.transferredOutCents;
+            transferredInCents += later.transferredInCents;
+            largestTransferCents = Math.max(largestTransferCents, later.largestTransferCents);
+            closingCents = later.closingCents;
+        }
+
+        // getter methods
+        public int getDeposits() { return deposits; }
+        public int getWithdrawals() { return withdrawals; }
+        public int getTransfersOut() { return transfersOut; }
+        public int getTransfersIn() { return transfersIn; }
+        public long getDepositedCents() { return depositedCents; }
+        public long getWithdrawnCents() { return withdrawnCents; }
+        public long getTransferredOutCents() { return transferredOutCents; }
+        public long getTransferredInCents() { return transferredInCents; }
+        public long getLargestTransferCents() { return largestTransferCents; }
+        public long getClosingCents() { return closingCents; }
+    }
+}
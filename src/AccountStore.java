@@ -0,0 +1,31 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Where UserManager keeps its full snapshot of accounts, picked by the file extension
+public interface AccountStore {
+
+    // hands every stored account to the consumer, throws FileNotFoundException if there is no file yet
+    void load(Consumer<Account> consumer) throws IOException;
+
+    // replaces the stored snapshot with these accounts
+    void save(List<Account> accounts) throws IOException;
+
+    static AccountStore forFile(String fileName) {
+        return forFile(fileName, 0);
+    }
+
+    // cachedAccounts bounds how many accounts keep their history in memory, 0 for no limit
+    // the binary store already reads histories through the page cache, so it has no bound of its own
+    static AccountStore forFile(String fileName, int cachedAccounts) {
+        if (fileName.endsWith(".bin")) return new BinaryAccountStore(fileName);
+        return new JsonAccountStore(fileName, cachedAccounts);
+    }
+
+    // for tools that read a whole store and never save it: JSON histories are kept in a ColumnarTransactionStore
+    // rather than as Transaction objects, the binary store already leaves them in the mapped file
+    static AccountStore forReading(String fileName) {
+        if (fileName.endsWith(".bin")) return new BinaryAccountStore(fileName);
+        return new JsonAccountStore(fileName, 0, new ColumnarTransactionStore());
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// Serves the Runner operations over TCP to many clients at once, all sharing one UserManager
+// one command per line, every reply starts with OK or ERR and replies come in command order, see handle:
+//   REGISTER <userName> <pin> <yyyy-mm-dd>   -> OK <accountNumber>
+//   LOGIN <userName> <pin>
+//   BALANCE [yyyy-mm-ddThh:mm[:ss]]          -> OK <balance>, now or as it stood at that time
+//   DEPOSIT <amount> | WITHDRAW <amount>     -> OK <balance>
+//   TRANSFER <accountNumber> <amount> [key]  -> OK <balance> <transferId>, a retry with the same key, recipient
+//                                               and amount gets the first transfer's id back without moving the money
+//                                               again; keys last 24 hours, a new key is refused while 100,000 are live
+//   HISTORY                                  -> OK <count>, then one "type amount dateTime [transferId]" line each
+//   HISTORY <limit> [cursor]                 -> OK <count> <nextCursor>, newest first, nextCursor is -1 on the last page
+//   PIN <newPin> | LOGOUT | QUIT
+//   METRICS                                  -> OK <count>, then that many lines of Metrics.snapshot()
+public class BankServer {
+    public static final int DEFAULT_PORT = 5050;
+    private static final int MAX_PIPELINED = 256; // replies a session holds back before it waits for them
+
+    private final UserManager userManager;
+    private final TransactionEngine engine;
+
+    public BankServer(UserManager userManager) {
+        this.userManager = userManager;
+        this.engine = new TransactionEngine(userManager);
+    }
+
+    // only reachable from this machine: PINs and commands are sent as plain text
+    public void serve(int port) throws IOException {
+        serve(InetAddress.getLoopbackAddress(), port);
+    }
+
+    public void serve(InetAddress address, int port) throws IOException {
+        ExecutorService sessions = newSessionExecutor();
+        try (ServerSocket server = new ServerSocket(port, 4096, address)) {
+            System.out.println("Bank server listening on " + address.getHostAddress() + ":" + port);
+            while (true) {
+                Socket socket = server.accept();
+                sessions.submit(() -> handle(socket));
+            }
+        } finally {
+            sessions.shutdown();
+        }
+    }
+
+    // a virtual thread per session when the JVM has them (Java 21+), otherwise a growing pool of platform threads
+    static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // commands are carried out as they are read, but the reply to a change waits until it is on disk; while the
+    // client has more commands waiting the session takes those on instead of waiting, so a client that pipelines
+    // gets its changes into the same group commit, and the replies go out in order once nothing more is waiting
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)))) {
+            Session session = new Session();
+            Deque<CompletableFuture<String>> replies = new ArrayDeque<>();
+            String line;
+            while (true) {
+                if (!replies.isEmpty() && (replies.size() >= MAX_PIPELINED || !in.ready())) send(replies, out);
+                if ((line = in.readLine()) == null) break;
+                CompletableFuture<String> reply = session.execute(line.trim());
+                if (reply == null) break; // QUIT
+                replies.add(reply);
+            }
+            send(replies, out); // still owed for commands before QUIT
+        } catch (IOException e) {
+            // client went away, nothing to clean up beyond the socket
+        }
+    }
+
+    private static void send(Deque<CompletableFuture<String>> replies, PrintWriter out) {
+        while (!replies.isEmpty()) {
+            out.print(replies.poll().join()); // never fails, a failed write is an ERR reply
+            out.print('\n');
+        }
+        out.flush();
+    }
+
+    // state for one connected client, only ever used by its own thread
+    private class Session {
+        private Account currentAccount;
+
+        // the reply to one command line, null for QUIT; a change is made at once and answered once it is on disk
+        CompletableFuture<String> execute(String line) {
+            String[] args = line.split("\\s+");
+            String command = args[0].toUpperCase();
+
+            try {
+                if (currentAccount != null && (command.equals("DEPOSIT") || command.equals("WITHDRAW") || command.equals("TRANSFER"))) {
+                    return change(command, args);
+                }
+                String reply = answer(command, args);
+                return reply == null ? null : CompletableFuture.completedFuture(reply);
+            } catch (NumberFormatException e) {
+                return CompletableFuture.completedFuture("ERR invalid amount");
+            } catch (IllegalArgumentException e) {
+                return CompletableFuture.completedFuture("ERR " + e.getMessage()); // an idempotency key reused for a different transfer
+            } catch (IllegalStateException e) {
+                return CompletableFuture.completedFuture("ERR " + e.getMessage()); // no room for a new idempotency key, nothing was moved
+            } catch (UncheckedIOException e) {
+                return CompletableFuture.completedFuture(notSaved(e)); // made in memory, kept only if a later save succeeds
+            }
+        }
+
+        // the balance in a reply is the one this change left, later pipelined commands may change it before it is sent
+        private CompletableFuture<String> change(String command, String[] args) {
+            switch (command) {
+                case "DEPOSIT": {
+                    if (args.length != 2) return CompletableFuture.completedFuture("ERR usage: DEPOSIT <amount>");
+                    CompletableFuture<Boolean> deposited = engine.depositAsync(currentAccount, Double.parseDouble(args[1]));
+                    String balance = "OK " + currentAccount.getBalance();
+                    return whenSaved(deposited, applied -> applied ? balance : "ERR invalid amount");
+                }
+                case "WITHDRAW": {
+                    if (args.length != 2) return CompletableFuture.completedFuture("ERR usage: WITHDRAW <amount>");
+                    CompletableFuture<Boolean> withdrawn = engine.withdrawAsync(currentAccount, Double.parseDouble(args[1]));
+                    String balance = "OK " + currentAccount.getBalance();
+                    return whenSaved(withdrawn, applied -> applied ? balance : "ERR insufficient funds or invalid amount");
+                }
+                default: { // TRANSFER
+                    if (args.length != 3 && args.length != 4) return CompletableFuture.completedFuture("ERR usage: TRANSFER <accountNumber> <amount> [key]");
+                    Account recipient = userManager.findAccount(args[1]);
+                    if (recipient == null) return CompletableFuture.completedFuture("ERR recipient account not found");
+                    CompletableFuture<Long> transfer = engine.transferOnceAsync(currentAccount, recipient, Double.parseDouble(args[2]),
+                            args.length == 4 ? args[3] : null);
+                    String balance = "OK " + currentAccount.getBalance();
+                    return whenSaved(transfer, transferId -> transferId != 0 ? balance + " " + transferId : "ERR insufficient funds or invalid amount");
+                }
+            }
+        }
+
+        // a write that fails on its way to disk is answered like one that failed at once
+        private <T> CompletableFuture<String> whenSaved(CompletableFuture<T> change, Function<T, String> reply) {
+            return change.handle((result, e) -> e == null ? reply.apply(result) : notSaved(e instanceof CompletionException ? e.getCause() : e));
+        }
+
+        private String notSaved(Throwable e) {
+            return "ERR not saved: " + e.getMessage();
+        }
+
+        // commands answered at once
+        private String answer(String command, String[] args) {
+            switch (command) {
+                case "REGISTER": return register(args);
+                case "LOGIN":
+                    if (args.length != 3) return "ERR usage: LOGIN <userName> <pin>";
+                    currentAccount = userManager.login(args[1], args[2]);
+                    return currentAccount != null ? "OK" : "ERR login failed";
+                case "QUIT":
+                    return null;
+                case "METRICS":
+                    String metrics = Metrics.snapshot().trim();
+                    return "OK " + metrics.split("\n").length + "\n" + metrics;
+                default:
+                    break;
+            }
+
+            if (currentAccount == null) return "ERR not logged in";
+            switch (command) {
+                case "BALANCE":
+                    if (args.length == 1) return "OK " + currentAccount.getBalance();
+                    return balanceAt(args);
+                case "HISTORY":
+                    return args.length > 1 ? historyPage(args) : history();
+                case "PIN":
+                    if (args.length != 2 || !args[1].matches("\\d{4}")) return "ERR PIN must be a 4-digit number";
+                    userManager.updatePin(currentAccount, args[1]);
+                    return "OK";
+                case "LOGOUT":
+                    currentAccount = null;
+                    return "OK";
+                default:
+                    return "ERR unknown command " + command;
+            }
+        }
+
+        // same rules as Runner.registerUser
+        private String register(String[] args) {
+            if (args.length != 4) return "ERR usage: REGISTER <userName> <pin> <yyyy-mm-dd>";
+            String userName = args[1];
+            if (userName.length() < 5 || userName.length() > 10 || userName.matches("\\d+")) {
+                return "ERR username must be 5-10 characters and not only digits";
+            }
+            if (!args[2].matches("\\d{4}")) return "ERR PIN must be a 4-digit number";
+
+            LocalDate dateOfBirth;
+            try {
+                dateOfBirth = LocalDate.parse(args[3]);
+            } catch (DateTimeParseException e) {
+                return "ERR date of birth must be YYYY-MM-DD";
+            }
+
+            Account account = new Account(args[2], userName, dateOfBirth, 0.0,
+                    userManager.generateUniqueAccountNumber(), userManager.generateRoutingNumber());
+            return userManager.addAccount(account) ? "OK " + Account.formatNumber(account.getAccountNumber()) : "ERR username is already taken";
+        }
+
+        private String balanceAt(String[] args) {
+            if (args.length != 2) return "ERR usage: BALANCE [yyyy-mm-ddThh:mm[:ss]]";
+            try {
+                return "OK " + engine.balanceCentsAt(currentAccount, LocalDateTime.parse(args[1])) / 100.0;
+            } catch (DateTimeParseException e) {
+                return "ERR time must be yyyy-mm-ddThh:mm[:ss]";
+            }
+        }
+
+        private String history() {
+            List<Transaction> transactions = engine.history(currentAccount);
+            StringBuilder reply = new StringBuilder("OK ").append(transactions.size());
+            for (Transaction t : transactions) {
+                reply.append('\n').append(t.getType().replace(' ', '_')).append(' ').append(t.getAmount()).append(' ').append(t.getDateTime());
+                if (t.getTransferId() != 0) reply.append(' ').append(t.getTransferId());
+            }
+            return reply.toString();
+        }
+
+        private String historyPage(String[] args) {
+            if (args.length > 3) return "ERR usage: HISTORY <limit> [cursor]";
+            TransactionQuery query = new TransactionQuery().newestFirst(true);
+            try {
+                int limit = Integer.parseInt(args[1]);
+                if (limit <= 0) return "ERR limit must be positive";
+                query.limit(limit);
+                if (args.length == 3) query.cursor(Integer.parseInt(args[2]));
+            } catch (NumberFormatException e) {
+                return "ERR invalid limit or cursor";
+            }
+
+            TransactionPage page = engine.query(currentAccount, query);
+            StringBuilder reply = new StringBuilder("OK ").append(page.getTransactions().size()).append(' ').append(page.getNextCursor());
+            for (Transaction t : page.getTransactions()) {
+                reply.append('\n').append(t.getType().replace(' ', '_')).append(' ').append(t.getAmount()).append(' ').append(t.getDateTime());
+                if (t.getTransferId() != 0) reply.append(' ').append(t.getTransferId());
+            }
+            return reply.toString();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        UserManager userManager = new UserManager(args.length > 1 ? args[1] : "users.json");
+        if (args.length > 2 && !args[2].equals("-")) { // a port for a scrape endpoint, or a file to rewrite every 10 seconds
+            if (args[2].matches("\\d+")) MetricsExporter.serveHttp(Integer.parseInt(args[2]));
+            else MetricsExporter.dumpEvery(args[2], 10);
+        }
+        // loopback unless an address to listen on is given, the protocol has no encryption
+        InetAddress address = args.length > 3 ? InetAddress.getByName(args[3]) : InetAddress.getLoopbackAddress();
+        new BankServer(userManager).serve(address, port);
+    }
+}
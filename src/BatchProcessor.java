@@ -0,0 +1,140 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Applies a file of deposit, withdraw and transfer instructions without the interactive menus
+// each line is either CSV:
+//   deposit,<accountNumber>,<amount>
+//   withdraw,<accountNumber>,<amount>
+//   transfer,<fromAccountNumber>,<toAccountNumber>,<amount>
+// or a JSON object: {"op": "transfer", "account": "...", "to": "...", "amount": 12.5}
+// rejected lines are written to <input>.rejected with the reason
+public class BatchProcessor {
+    private static final int DEFAULT_BATCH_SIZE = 10_000; // instructions per durable commit
+
+    private final UserManager userManager;
+    private final TransactionEngine engine;
+    private final int batchSize;
+
+    private long applied;
+    private long rejected;
+
+    public BatchProcessor(UserManager userManager, int batchSize) {
+        this.userManager = userManager;
+        this.engine = new TransactionEngine(userManager);
+        this.batchSize = batchSize;
+    }
+
+    public void process(String inputFile) throws IOException {
+        long start = System.nanoTime();
+        userManager.setAutoFlush(false); // one flush and fsync per batch instead of per change
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile), StandardCharsets.UTF_8), 1 << 16);
+             PrintWriter rejects = new PrintWriter(new BufferedWriter(new FileWriter(inputFile + ".rejected")))) {
+            String line;
+            long lineNumber = 0;
+            int inBatch = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String error = apply(line);
+                if (error == null) {
+                    applied++;
+                } else {
+                    rejected++;
+                    rejects.println(lineNumber + "," + error + "," + line);
+                }
+
+                if (++inBatch == batchSize) {
+                    userManager.commit();
+                    inBatch = 0;
+                }
+            }
+            userManager.commit(); // the last partial batch
+        } finally {
+            userManager.setAutoFlush(true);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Applied %d, rejected %d in %.2f s (%.0f ops/sec)%n",
+                applied, rejected, seconds, (applied + rejected) / seconds);
+        if (rejected > 0) System.out.println("Rejected rows written to " + inputFile + ".rejected");
+        MetricsExporter.dump(inputFile + ".metrics"); // latency percentiles for the run
+        System.out.println("Metrics written to " + inputFile + ".metrics");
+    }
+
+    // returns null when the instruction was applied, otherwise the reason it was rejected
+    private String apply(String line) {
+        String op, account, to = null, amountText;
+        if (line.startsWith("{")) {
+            op = jsonValue(line, "op");
+            account = jsonValue(line, "account");
+            to = jsonValue(line, "to");
+            amountText = jsonValue(line, "amount");
+        } else {
+            String[] fields = line.split(",");
+            op = fields[0].trim();
+            boolean isTransfer = op.equalsIgnoreCase("transfer");
+            if (fields.length != (isTransfer ? 4 : 3)) return "malformed";
+            account = fields[1].trim();
+            if (isTransfer) to = fields[2].trim();
+            amountText = fields[fields.length - 1].trim();
+        }
+        if (op == null || account == null || amountText == null) return "malformed";
+
+        double amount;
+        try {
+            amount = Double.parseDouble(amountText);
+        } catch (NumberFormatException e) {
+            return "invalid amount";
+        }
+        if (!Account.isValidAmount(amount)) return "invalid amount";
+
+        Account from = userManager.findAccount(account);
+        if (from == null) return "unknown account " + account;
+
+        switch (op.toLowerCase()) {
+            case "deposit":
+                return engine.deposit(from, amount) ? null : "balance cannot hold amount";
+            case "withdraw":
+                return engine.withdraw(from, amount) ? null : "insufficient funds";
+            case "transfer":
+                if (to == null) return "malformed";
+                Account recipient = userManager.findAccount(to);
+                if (recipient == null) return "unknown account " + to;
+                if (recipient == from) return "same account";
+                return engine.transfer(from, recipient, amount) ? null : "insufficient funds";
+            default:
+                return "unknown operation " + op;
+        }
+    }
+
+    // finds "key": value in a one line JSON object, enough for the flat instruction objects
+    private static String jsonValue(String json, String key) {
+        int start = json.indexOf("\"" + key + "\"");
+        if (start == -1) return null;
+        start = json.indexOf(':', start) + 1;
+        while (start < json.length() && Character.isWhitespace(json.charAt(start))) start++;
+        if (start >= json.length()) return null;
+
+        if (json.charAt(start) == '"') {
+            int end = json.indexOf('"', start + 1);
+            return end == -1 ? null : json.substring(start + 1, end);
+        }
+        int end = start;
+        while (end < json.length() && json.charAt(end) != ',' && json.charAt(end) != '}') end++;
+        return json.substring(start, end).trim();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java -cp src BatchProcessor <instructions file> [users file] [batch size]");
+            return;
+        }
+        UserManager userManager = new UserManager(args.length > 1 ? args[1] : "users.json");
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCH_SIZE;
+        new BatchProcessor(userManager, batchSize).process(args[0]);
+    }
+}
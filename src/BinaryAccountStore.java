@@ -0,0 +1,293 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Compact binary snapshot, read back through memory mapped windows of the file
+// transaction records stay in the mapping and are decoded on demand by MappedTransactionList
+//
+// header:      int magic, int version, int account count
+// account:     short+bytes userName, short+bytes pin, int dateOfBirth (epoch day),
+//              long balance (cents), int accountNumber, int routingNumber, int transaction count
+// transaction: fixed 25 bytes, byte type, long amount (cents), long dateTime (epoch millis, UTC), long transferId
+//              (versions 1 and 2 have 17 byte records without the transfer id)
+// statistics:  after the transactions (version 2), long opening balance (cents), int day count, then per day
+//              int epoch day, int deposits, withdrawals, transfers out, transfers in, long deposited,
+//              withdrawn, transferred out, transferred in, largest transfer, closing balance (all cents),
+//              then (version 4) int transaction count, int checkpoint count, long balance per checkpoint (cents)
+public class BinaryAccountStore implements AccountStore {
+    private static final int MAGIC = 0x4A4D424B; // "JMBK"
+    private static final int VERSION = 4; // version 1 files have no statistics, all older versions are still read
+    static final int TRANSACTION_SIZE = 25;
+    static final int OLD_TRANSACTION_SIZE = 17;
+    static final String[] TYPES = {"Deposit", "Withdraw", "Transfer", "Incoming Transfer"}; // index is the stored byte
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final long WINDOW = 256L * 1024 * 1024; // bytes mapped at a time, so files over 2GB still work
+
+    private final String fileName;
+
+    public BinaryAccountStore(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public void load(Consumer<Account> consumer) throws IOException {
+        if (!new File(fileName).exists()) throw new FileNotFoundException(fileName);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            MappedInput in = new MappedInput(channel);
+            if (in.getInt() != MAGIC) throw new IOException(fileName + " is not an account store");
+            int version = in.getInt();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported store version " + version);
+            int recordSize = version >= 3 ? TRANSACTION_SIZE : OLD_TRANSACTION_SIZE;
+
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                String userName = in.getString();
+                String pin = in.getString();
+                int epochDay = in.getInt();
+                long balanceCents = in.getLong();
+                int accountNumber = in.getInt();
+                int routingNumber = in.getInt();
+                int transactionCount = in.getInt();
+
+                ByteBuffer records = in.slice((long) transactionCount * recordSize);
+
+                Account account = new Account(pin, userName, epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay),
+                        balanceCents / 100.0, accountNumber, routingNumber);
+                MappedTransactionList transactions = new MappedTransactionList(records, transactionCount, recordSize);
+                AccountStatistics statistics = version >= 2 ? readStatistics(in, version) : null;
+                if (statistics != null && statistics.matches(balanceCents, transactionCount)) {
+                    account.setTransactions(transactions, statistics);
+                } else {
+                    account.setTransactions(transactions); // decodes the history once to rebuild them
+                }
+                consumer.accept(account);
+            }
+        }
+    }
+
+    public void save(List<Account> accounts) throws IOException {
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(accounts.size());
+
+            for (Account account : accounts) {
+                writeString(out, account.getUserName());
+                writeString(out, account.getPin());
+                out.writeInt(account.getDateOfBirth() == null ? NO_DATE : (int) account.getDateOfBirth().toEpochDay());
+                out.writeLong(account.getBalanceCents());
+                out.writeInt(account.getAccountNumber());
+                out.writeInt(account.getRoutingNumber());
+
+                List<Transaction> transactions = account.getTransactions();
+                out.writeInt(transactions.size());
+                if (transactions instanceof MappedTransactionList
+                        && ((MappedTransactionList) transactions).getRecordSize() == TRANSACTION_SIZE) {
+                    // records loaded from a binary store are copied as they are, without decoding them
+                    // (older records are decoded and written out again in the current size)
+                    MappedTransactionList mapped = (MappedTransactionList) transactions;
+                    ByteBuffer records = mapped.mappedRecords();
+                    byte[] chunk = new byte[64 * TRANSACTION_SIZE];
+                    while (records.hasRemaining()) {
+                        int n = Math.min(chunk.length, records.remaining());
+                        records.get(chunk, 0, n);
+                        out.write(chunk, 0, n);
+                    }
+                    transactions = mapped.getAdded();
+                }
+                for (Transaction t : transactions) {
+                    out.writeByte(typeCode(t.getType()));
+                    out.writeLong(Account.toCents(t.getAmount()));
+                    out.writeLong(t.getDateTime().toInstant(ZoneOffset.UTC).toEpochMilli());
+                    out.writeLong(t.getTransferId());
+                }
+                writeStatistics(out, account.getStatistics());
+            }
+            out.flush();
+            file.getFD().sync(); // on disk before the rename
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        remap(accounts);
+    }
+
+    // points every saved history at its records in the file just written: the replaced file is unlinked, and
+    // its space is only freed once nothing maps it, and the transactions added on the heap since the load are
+    // written now so they can go; runs while no update can change the accounts (UserManager holds its save lock)
+    private void remap(List<Account> accounts) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            MappedInput in = new MappedInput(channel);
+            in.slice(8); // magic and version, just written
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                in.getString(); // userName
+                in.getString(); // pin
+                in.slice(20); // date of birth, balance, account and routing number
+                int transactionCount = in.getInt();
+                ByteBuffer records = in.slice((long) transactionCount * TRANSACTION_SIZE);
+                in.slice(8); // the statistics are the account's own, skip them
+                int days = in.getInt();
+                in.slice(days * 68L + 4);
+                in.slice(in.getInt() * 8L);
+
+                Account account = accounts.get(i);
+                if (account.getTransactionCount() != transactionCount) continue; // cannot happen under the save lock
+                account.setTransactions(new MappedTransactionList(records, transactionCount, TRANSACTION_SIZE), account.getStatistics());
+            }
+        }
+    }
+
+    private static void writeStatistics(DataOutputStream out, AccountStatistics statistics) throws IOException {
+        out.writeLong(statistics.getOpeningCents());
+        out.writeInt(statistics.getDays().size());
+        for (Map.Entry<Long, AccountStatistics.Bucket> day : statistics.getDays().entrySet()) {
+            AccountStatistics.Bucket b = day.getValue();
+            out.writeInt(day.getKey().intValue());
+            out.writeInt(b.deposits);
+            out.writeInt(b.withdrawals);
+            out.writeInt(b.transfersOut);
+            out.writeInt(b.transfersIn);
+            out.writeLong(b.depositedCents);
+            out.writeLong(b.withdrawnCents);
+            out.writeLong(b.transferredOutCents);
+            out.writeLong(b.transferredInCents);
+            out.writeLong(b.largestTransferCents);
+            out.writeLong(b.closingCents);
+        }
+        out.writeInt(statistics.getTransactionCount());
+        out.writeInt(statistics.getCheckpointCount());
+        for (int i = 0; i < statistics.getCheckpointCount(); i++) out.writeLong(statistics.getCheckpoint(i));
+    }
+
+    private static AccountStatistics readStatistics(MappedInput in, int version) throws IOException {
+        AccountStatistics statistics = new AccountStatistics(in.getLong());
+        int days = in.getInt();
+        for (int i = 0; i < days; i++) {
+            long epochDay = in.getInt();
+            AccountStatistics.Bucket b = new AccountStatistics.Bucket();
+            b.deposits = in.getInt();
+            b.withdrawals = in.getInt();
+            b.transfersOut = in.getInt();
+            b.transfersIn = in.getInt();
+            b.depositedCents = in.getLong();
+            b.withdrawnCents = in.getLong();
+            b.transferredOutCents = in.getLong();
+            b.transferredInCents = in.getLong();
+            b.largestTransferCents = in.getLong();
+            b.closingCents = in.getLong();
+            statistics.putDay(epochDay, b);
+        }
+        if (version >= 4) {
+            int transactionCount = in.getInt();
+            long[] checkpoints = new long[in.getInt()];
+            for (int i = 0; i < checkpoints.length; i++) checkpoints[i] = in.getLong();
+            statistics.putCheckpoints(transactionCount, checkpoints);
+        }
+        return statistics;
+    }
+
+    // reads the record of recordSize bytes starting at offset, without moving the buffer's position
+    static Transaction decodeTransaction(ByteBuffer buffer, int offset, int recordSize) {
+        String type = TYPES[buffer.get(offset)];
+        double amount = buffer.getLong(offset + 1) / 100.0;
+        long millis = buffer.getLong(offset + 9);
+        LocalDateTime dateTime = LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+        long transferId = recordSize == TRANSACTION_SIZE ? buffer.getLong(offset + 17) : 0;
+        return new Transaction(type, amount, dateTime, transferId);
+    }
+
+    static byte typeCode(String type) throws IOException {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) return (byte) i;
+        }
+        throw new IOException("Transaction type cannot be stored in binary form: " + type);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    // sequential reads over a file mapped one window at a time
+    private static class MappedInput {
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart; // file offset of the current window
+        MappedByteBuffer buffer;
+
+        MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0);
+        }
+
+        // makes sure the next n bytes are inside the mapped window
+        void ensure(int n) throws IOException {
+            if (buffer.remaining() >= n) return;
+            long position = windowStart + buffer.position();
+            if (position + n > size) throw new EOFException("Account store is truncated");
+            map(position);
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        // the next length bytes as their own buffer, the mapping stays valid after the channel closes
+        ByteBuffer slice(long length) throws IOException {
+            long position = windowStart + buffer.position();
+            if (position + length > size) throw new EOFException("Account store is truncated");
+
+            ByteBuffer slice;
+            if (buffer.remaining() >= length) {
+                ByteBuffer window = buffer.duplicate();
+                window.limit(buffer.position() + (int) length);
+                slice = window.slice();
+                buffer.position(buffer.position() + (int) length);
+            } else {
+                slice = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                map(position + length); // carry on after the records
+            }
+            return slice;
+        }
+
+        String getString() throws IOException {
+            ensure(2);
+            int length = buffer.getShort() & 0xFFFF;
+            ensure(length);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void map(long position) throws IOException {
+            windowStart = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+// Keeps transaction history for many accounts in primitive columns instead of one object per transaction
+// a row costs 29 bytes (type code, amount in cents, epoch nanos, transfer id, account id) plus 4 bytes in its account's
+// row index, where a Transaction with its LocalDateTime costs well over 100
+//
+// rows live in fixed size chunks that never move once created, so a reader holding an account's lock
+// sees that account's rows without locking the store, only appends are synchronized
+public class ColumnarTransactionStore {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // rows per chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final String[] TYPES = BinaryAccountStore.TYPES; // same codes as the binary store
+
+    private volatile Chunk[] chunks = new Chunk[16];
+    private int rows; // rows appended so far, guarded by this
+
+    private static class Chunk {
+        final byte[] types = new byte[CHUNK_SIZE];
+        final long[] cents = new long[CHUNK_SIZE];
+        final long[] epochNanos = new long[CHUNK_SIZE];
+        final long[] transferIds = new long[CHUNK_SIZE];
+        final int[] accounts = new int[CHUNK_SIZE];
+    }
+
+    // an empty history for a new account, its rows are tagged with accountId
+    public AccountHistory newHistory(int accountId) {
+        return new AccountHistory(accountId);
+    }
+
+    // copies the account's current history into the columns and switches the account over to it
+    // null, and the account left as it was, if a transaction has a type the columns have no code for
+    public AccountHistory adopt(Account account) {
+        List<Transaction> transactions = account.getTransactions();
+        for (Transaction transaction : transactions) {
+            if (!isStorable(transaction.getType())) return null;
+        }
+        AccountHistory history = new AccountHistory(account.getAccountNumber());
+        for (Transaction transaction : transactions) history.add(transaction);
+        account.setTransactions(history, account.getStatistics());
+        return history;
+    }
+
+    // number of rows in the whole store
+    public synchronized int size() {
+        return rows;
+    }
+
+    private synchronized int append(int accountId, byte type, long cents, long epochNanos, long transferId) {
+        int row = rows;
+        Chunk[] table = chunks;
+        int index = row >>> CHUNK_BITS;
+        if (index == table.length) table = Arrays.copyOf(table, table.length * 2);
+        if (table[index] == null) table[index] = new Chunk();
+        chunks = table; // publish a grown table before any row in the new chunk is handed out
+
+        Chunk chunk = table[index];
+        int slot = row & CHUNK_MASK;
+        chunk.types[slot] = type;
+        chunk.cents[slot] = cents;
+        chunk.epochNanos[slot] = epochNanos;
+        chunk.transferIds[slot] = transferId;
+        chunk.accounts[slot] = accountId;
+        rows++;
+        return row;
+    }
+
+    // column reads for code that wants the primitives without a Transaction view
+    public byte typeCode(int row) { return chunk(row).types[row & CHUNK_MASK]; }
+    public long amountCents(int row) { return chunk(row).cents[row & CHUNK_MASK]; }
+    public long epochNanos(int row) { return chunk(row).epochNanos[row & CHUNK_MASK]; }
+    public long transferId(int row) { return chunk(row).transferIds[row & CHUNK_MASK]; }
+    public int accountId(int row) { return chunk(row).accounts[row & CHUNK_MASK]; }
+
+    private Chunk chunk(int row) {
+        return chunks[row >>> CHUNK_BITS];
+    }
+
+    static boolean isStorable(String type) {
+        for (String stored : TYPES) {
+            if (stored.equals(type)) return true;
+        }
+        return false;
+    }
+
+    static byte typeCode(String type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) return (byte) i;
+        }
+        throw new IllegalArgumentException("Transaction type cannot be stored in columns: " + type);
+    }
+
+    // nanoseconds since 1970 in UTC, a long covers the years 1677 to 2262
+    static long toEpochNanos(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + dateTime.getNano();
+    }
+
+    static LocalDateTime fromEpochNanos(long nanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC);
+    }
+
+    // one account's history as a list of row numbers into the store, same locking rules as the ArrayList it replaces
+    public class AccountHistory extends AbstractList<Transaction> {
+        private final int accountId;
+        private int[] rowIndex = new int[4];
+        private int size;
+
+        AccountHistory(int accountId) {
+            this.accountId = accountId;
+        }
+
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index);
+            return new View(rowIndex[index]);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean add(Transaction transaction) {
+            int row = append(accountId, typeCode(transaction.getType()), Account.toCents(transaction.getAmount()),
+                    toEpochNanos(transaction.getDateTime()), transaction.getTransferId());
+            if (size == rowIndex.length) rowIndex = Arrays.copyOf(rowIndex, size * 2);
+            rowIndex[size++] = row;
+            modCount++;
+            return true;
+        }
+
+        // the store row behind the index-th transaction
+        public int row(int index) {
+            return rowIndex[index];
+        }
+    }
+
+    // flyweight Transaction: just a row number, every getter reads the columns
+    private class View extends Transaction {
+        private final int row;
+
+        View(int row) {
+            this.row = row;
+        }
+
+        public String getType() { return TYPES[typeCode(row)]; }
+        public double getAmount() { return amountCents(row) / 100.0; }
+        public LocalDateTime getDateTime() { return fromEpochNanos(epochNanos(row)); }
+        public long getTransferId() { return transferId(row); }
+
+        public void setDateTime(LocalDateTime dateTime) {
+            chunk(row).epochNanos[row & CHUNK_MASK] = toEpochNanos(dateTime);
+        }
+    }
+
+    // a store for histories that are already in memory
+    public static ColumnarTransactionStore of(List<Account> accounts) {
+        ColumnarTransactionStore store = new ColumnarTransactionStore();
+        for (Account account : accounts) store.adopt(account);
+        return store;
+    }
+}
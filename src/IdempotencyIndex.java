@@ -0,0 +1,91 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Consumer;
+
+// Remembers which transfer each idempotency key produced, so a client that retries after a timeout gets the
+// first transfer back instead of moving the money a second time
+//
+// keys are held in the order they were made and every key lives equally long, so the oldest key is always the
+// next to expire: lookups drop expired keys from the front, O(1) per key. A retry that arrives after its key is
+// gone runs as a new transfer, clients are expected to give up well before the time to live.
+//
+// a live key is never dropped to make room, that would let a retry move the money twice. The index fails closed
+// instead: once it holds capacity live keys hasRoom is false and callers refuse new keyed transfers until the
+// oldest expire, so with the defaults a store takes at most 100,000 keyed transfers in any 24 hours. A few
+// transfers that checked for room at the same moment can take it past capacity, by at most the ones in flight
+public class IdempotencyIndex {
+    public static final int DEFAULT_CAPACITY = 100_000;
+    public static final long DEFAULT_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final int capacity;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(); // oldest first
+
+    public static class Entry {
+        final String key;
+        final long transferId;
+        final int recipient; // account number the transfer went to, 0 if unknown (keys journaled before it was kept)
+        final long cents; // amount moved, -1 if unknown
+        final long createdMillis;
+        final long record; // journal record of the key, a retry waits for it like the first request did
+
+        Entry(String key, long transferId, int recipient, long cents, long createdMillis, long record) {
+            this.key = key;
+            this.transferId = transferId;
+            this.recipient = recipient;
+            this.cents = cents;
+            this.createdMillis = createdMillis;
+            this.record = record;
+        }
+
+        // whether a retry asks for the same transfer, a key reused for a different one must not be answered with it
+        boolean matches(int recipient, long cents) {
+            return (this.recipient == 0 || this.recipient == recipient) && (this.cents == -1 || this.cents == cents);
+        }
+    }
+
+    public IdempotencyIndex() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS);
+    }
+
+    public IdempotencyIndex(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // null if the key was never used or has expired
+    public synchronized Entry get(String key, long nowMillis) {
+        expire(nowMillis);
+        return entries.get(key);
+    }
+
+    // whether a new key may be added, checked before the transfer it will belong to moves any money
+    public synchronized boolean hasRoom(long nowMillis) {
+        expire(nowMillis);
+        return entries.size() < capacity;
+    }
+
+    // false if the key had already expired by nowMillis (a journal record replayed long after it was written)
+    // never drops a live key, see hasRoom
+    public synchronized boolean put(String key, long transferId, int recipient, long cents, long createdMillis, long record,
+                                    long nowMillis) {
+        if (createdMillis + ttlMillis <= nowMillis) return false;
+        entries.put(key, new Entry(key, transferId, recipient, cents, createdMillis, record));
+        return true;
+    }
+
+    // every key still live, oldest first
+    public synchronized void forEach(long nowMillis, Consumer<Entry> action) {
+        expire(nowMillis);
+        for (Entry entry : entries.values()) action.accept(entry);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void expire(long nowMillis) {
+        Iterator<Entry> oldest = entries.values().iterator();
+        while (oldest.hasNext() && oldest.next().createdMillis + ttlMillis <= nowMillis) oldest.remove();
+    }
+}
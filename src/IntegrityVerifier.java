@@ -0,0 +1,481 @@
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+// Checks a saved store against the invariants the rest of the code relies on:
+//   - every account's balance is the net of its transactions (accounts are opened empty)
+//   - each history is in time order, which the binary searches over it assume
+//   - every Transfer has one Incoming Transfer of the same amount and the other way round, paired by
+//     transfer id, or for transfers saved before the ids by amount and a time within LEGACY_WINDOW_NANOS:
+//     those legs name no counterpart, and each was stamped by its own now() call
+//
+// users.json is streamed: the calling thread only cuts the file into account objects, worker threads parse them
+// with the same JsonAccountReader the store loads with and check them, so memory stays flat however large the
+// file is. Transfer legs are not kept either: each worker adds every leg, signed, into a fixed table of buckets
+// picked by its key (count, cents and a second hash of the key), and the two legs of a transfer cancel out.
+// Only if some bucket is left over is the store read a second time, keeping just the legs that fall in those
+// buckets, to name the transfers that do not pair up
+//
+// several files are checked as one, so the shards of a ShardedUserManager can be given together
+public class IntegrityVerifier {
+    private static final int BUCKET_BITS = 16; // 65536 buckets, 1.5 MB per worker
+    private static final int BATCH_BYTES = 1 << 20; // of JSON handed to a worker at a time
+    private static final int BATCH_ACCOUNTS = 1024; // binary stores hand over accounts instead of bytes
+    static final int MAX_REPORTED = 1000; // discrepancies listed, the rest are only counted
+    static final long LEGACY_WINDOW_NANOS = 1_000_000_000L; // furthest apart the two legs of a transfer without an id may be
+
+    private final int threads;
+
+    public IntegrityVerifier(int threads) {
+        this.threads = threads;
+    }
+
+    public Result verify(List<String> fileNames) throws IOException {
+        long start = System.nanoTime();
+        List<Checker> checkers = scan(fileNames, Checker::new);
+
+        Result result = new Result();
+        Ledger ledger = new Ledger();
+        for (Checker checker : checkers) {
+            result.merge(checker.result);
+            ledger.merge(checker.ledger);
+        }
+
+        BitSet unpaired = ledger.unbalancedBuckets();
+        int unbalanced = unpaired.cardinality();
+        if (unbalanced > MAX_REPORTED) { // each holds at least one discrepancy, enough to fill the list
+            unpaired.clear(unpaired.stream().skip(MAX_REPORTED).findFirst().getAsInt(), unpaired.length());
+            result.report("transfers in " + (unbalanced - MAX_REPORTED) + " more of " + (1 << BUCKET_BITS)
+                    + " buckets do not pair up, not listed");
+        }
+        if (!unpaired.isEmpty()) {
+            Map<Long, List<Leg>> legs = new HashMap<>();
+            for (LegCollector collector : scan(fileNames, () -> new LegCollector(unpaired))) {
+                for (Map.Entry<Long, List<Leg>> entry : collector.legs.entrySet()) {
+                    legs.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).addAll(entry.getValue());
+                }
+            }
+            List<Leg> legacy = new ArrayList<>(); // paired across windows, not within one key
+            for (List<Leg> sameKey : legs.values()) {
+                List<Leg> withId = new ArrayList<>();
+                for (Leg leg : sameKey) (leg.transaction.getTransferId() == 0 ? legacy : withId).add(leg);
+                reportUnpaired(withId, result);
+            }
+            reportUnpairedLegacy(legacy, result);
+        }
+        for (String fileName : fileNames) result.bytes += new File(fileName).length();
+        result.millis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    // pairs outgoing with incoming legs of equal amount, whatever is left has no other side
+    private static void reportUnpaired(List<Leg> legs, Result result) {
+        List<Leg> incoming = new ArrayList<>();
+        for (Leg leg : legs) if (!leg.outgoing) incoming.add(leg);
+        for (Leg leg : legs) {
+            if (!leg.outgoing) continue;
+            boolean paired = false;
+            for (Iterator<Leg> in = incoming.iterator(); in.hasNext(); ) {
+                if (in.next().cents == leg.cents) {
+                    in.remove();
+                    paired = true;
+                    break;
+                }
+            }
+            if (!paired) result.report(leg + " has no matching Incoming Transfer");
+        }
+        for (Leg leg : incoming) result.report(leg + " has no matching Transfer");
+    }
+
+    // legs without a transfer id, in time order: one pairs with the oldest earlier leg of the same amount going
+    // the other way if that is at most LEGACY_WINDOW_NANOS older; the first pass buckets them by window, so a
+    // pair split across a window boundary leaves both windows unbalanced and both legs end up here
+    private static void reportUnpairedLegacy(List<Leg> legs, Result result) {
+        legs.sort(Comparator.comparing(leg -> leg.transaction.getDateTime()));
+        Map<Long, ArrayDeque<Leg>> waiting = new HashMap<>(); // by cents, all the same way or they would have paired
+        for (Leg leg : legs) {
+            ArrayDeque<Leg> sameAmount = waiting.computeIfAbsent(leg.cents, k -> new ArrayDeque<>());
+            long nanos = epochNanos(leg.transaction.getDateTime());
+            while (!sameAmount.isEmpty() && epochNanos(sameAmount.peek().transaction.getDateTime()) < nanos - LEGACY_WINDOW_NANOS) {
+                reportLeg(sameAmount.poll(), result); // too old for anything still to come
+            }
+            if (!sameAmount.isEmpty() && sameAmount.peek().outgoing != leg.outgoing) sameAmount.poll();
+            else sameAmount.add(leg);
+        }
+        for (ArrayDeque<Leg> sameAmount : waiting.values()) {
+            for (Leg leg : sameAmount) reportLeg(leg, result);
+        }
+    }
+
+    private static void reportLeg(Leg leg, Result result) {
+        result.report(leg + (leg.outgoing ? " has no matching Incoming Transfer" : " has no matching Transfer"));
+    }
+
+    // one read of every file through a pool of workers, returns the workers once they have all finished
+    private <W extends Worker> List<W> scan(List<String> fileNames, Supplier<W> factory) throws IOException {
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(threads * 2); // the reader waits when workers fall behind
+        List<W> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            W worker = factory.get();
+            worker.queue = queue;
+            worker.setDaemon(true); // never keeps the JVM up after a failed read
+            worker.start();
+            workers.add(worker);
+        }
+        try {
+            for (String fileName : fileNames) {
+                if (fileName.endsWith(".bin")) readBinary(fileName, queue);
+                else split(fileName, queue);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + fileNames);
+        } finally {
+            try {
+                for (int i = 0; i < threads; i++) queue.put(Batch.END); // behind every batch still queued
+                for (W worker : workers) worker.join();
+            } catch (InterruptedException e) {
+                for (W worker : workers) worker.interrupt();
+                Thread.currentThread().interrupt();
+            }
+        }
+        return workers;
+    }
+
+    // cuts the top level array of users.json into one byte range per account without parsing anything,
+    // only tracking strings and nesting depth
+    private static void split(String fileName, BlockingQueue<Batch> queue) throws IOException, InterruptedException {
+        try (InputStream in = new FileInputStream(fileName)) {
+            byte[] buffer = new byte[1 << 16];
+            byte[] pending = new byte[1 << 12]; // the part of an account read with earlier buffers
+            int pendingLength = 0;
+            long base = 0; // file offset of buffer[0]
+            long accountOffset = -1; // of the account being cut out, -1 between accounts
+            int depth = 0;
+            boolean inString = false, escaped = false;
+            Batch batch = new Batch(fileName);
+
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                int start = accountOffset < 0 ? -1 : 0;
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer[i];
+                    if (inString) {
+                        if (escaped) escaped = false;
+                        else if (b == '\\') escaped = true;
+                        else if (b == '"') inString = false;
+                        continue;
+                    }
+                    if (b == '"') {
+                        inString = true;
+                    } else if (b == '{' || b == '[') {
+                        if (b == '{' && depth == 1) {
+                            accountOffset = base + i;
+                            start = i;
+                        }
+                        depth++;
+                    } else if (b == '}' || b == ']') {
+                        depth--;
+                        if (b == '}' && depth == 1 && accountOffset >= 0) {
+                            byte[] json = Arrays.copyOf(pending, pendingLength + i + 1 - start);
+                            System.arraycopy(buffer, start, json, pendingLength, i + 1 - start);
+                            batch.add(json, accountOffset);
+                            pendingLength = 0;
+                            accountOffset = -1;
+                            start = -1;
+                            if (batch.bytes >= BATCH_BYTES) {
+                                queue.put(batch);
+                                batch = new Batch(fileName);
+                            }
+                        }
+                    }
+                }
+                if (accountOffset >= 0) { // the account carries on into the next buffer
+                    int length = n - start;
+                    if (pendingLength + length > pending.length) pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length));
+                    System.arraycopy(buffer, start, pending, pendingLength, length);
+                    pendingLength += length;
+                }
+                base += n;
+            }
+            if (accountOffset >= 0) batch.unreadable("account at byte " + accountOffset + " of " + fileName + " is cut off");
+            if (!batch.isEmpty()) queue.put(batch);
+        }
+    }
+
+    // the binary store has no text to cut up, its own loader hands over accounts that read their history from the mapping
+    private static void readBinary(String fileName, BlockingQueue<Batch> queue) throws IOException, InterruptedException {
+        Batch[] batch = {new Batch(fileName)};
+        try {
+            AccountStore.forFile(fileName).load(account -> {
+                batch[0].accounts.add(account);
+                if (batch[0].accounts.size() == BATCH_ACCOUNTS) {
+                    try {
+                        queue.put(batch[0]);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    batch[0] = new Batch(fileName);
+                }
+            });
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof InterruptedException) throw (InterruptedException) e.getCause();
+            throw e;
+        }
+        if (!batch[0].isEmpty()) queue.put(batch[0]);
+    }
+
+    // accounts for a worker, either as raw JSON objects or already loaded
+    private static class Batch {
+        static final Batch END = new Batch(null); // one per worker after the last file
+
+        final String fileName;
+        final List<byte[]> json = new ArrayList<>();
+        final List<Long> offsets = new ArrayList<>();
+        final List<Account> accounts = new ArrayList<>();
+        final List<String> unreadable = new ArrayList<>();
+        int bytes;
+
+        Batch(String fileName) {
+            this.fileName = fileName;
+        }
+
+        void add(byte[] account, long offset) {
+            json.add(account);
+            offsets.add(offset);
+            bytes += account.length;
+        }
+
+        void unreadable(String message) {
+            unreadable.add(message);
+        }
+
+        boolean isEmpty() {
+            return json.isEmpty() && accounts.isEmpty() && unreadable.isEmpty();
+        }
+    }
+
+    private abstract static class Worker extends Thread {
+        BlockingQueue<Batch> queue;
+        final Result result = new Result();
+
+        public void run() {
+            try {
+                Batch batch;
+                while ((batch = queue.take()) != Batch.END) {
+                    for (int i = 0; i < batch.json.size(); i++) {
+                        String where = "account at byte " + batch.offsets.get(i) + " of " + batch.fileName;
+                        try {
+                            check(JsonAccountReader.parseAccount(new String(batch.json.get(i), java.nio.charset.StandardCharsets.UTF_8)));
+                        } catch (IOException | RuntimeException e) {
+                            result.report(where + " cannot be read: " + e.getMessage());
+                        }
+                    }
+                    for (Account account : batch.accounts) check(account);
+                    for (String message : batch.unreadable) result.report(message);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        abstract void check(Account account);
+    }
+
+    // the first pass: per account invariants, and every transfer leg into the ledger
+    private static class Checker extends Worker {
+        final Ledger ledger = new Ledger();
+
+        void check(Account account) {
+            result.accounts++;
+            String number = Account.formatNumber(account.getAccountNumber());
+            long net = 0;
+            LocalDateTime previous = null;
+            boolean ordered = true;
+            for (Transaction t : account.getTransactions()) {
+                result.transactions++;
+                long cents = Account.toCents(t.getAmount());
+                boolean outgoing = t.getType().equals("Transfer");
+                if (outgoing || t.getType().equals("Incoming Transfer")) {
+                    ledger.add(key(t, cents), outgoing, cents);
+                    if (outgoing) result.transfers++;
+                } else if (!t.getType().equals("Deposit") && !t.getType().equals("Withdraw")) {
+                    result.report("account " + number + " has a transaction of unknown type " + t.getType());
+                }
+                net += AccountStatistics.change(t.getType(), cents);
+                if (ordered && previous != null && t.getDateTime().isBefore(previous)) {
+                    result.report("account " + number + " history goes back in time at " + t.getDateTime());
+                    ordered = false; // once per account
+                }
+                previous = t.getDateTime();
+            }
+            if (net != account.getBalanceCents()) {
+                result.report(String.format("account %s balance $%.2f but its transactions net $%.2f", number,
+                        account.getBalanceCents() / 100.0, net / 100.0));
+            }
+        }
+    }
+
+    // the second pass: the legs that fall in buckets the first pass could not balance
+    private static class LegCollector extends Worker {
+        final BitSet buckets;
+        final Map<Long, List<Leg>> legs = new HashMap<>();
+
+        LegCollector(BitSet buckets) {
+            this.buckets = buckets;
+        }
+
+        void check(Account account) {
+            for (Transaction t : account.getTransactions()) {
+                boolean outgoing = t.getType().equals("Transfer");
+                if (!outgoing && !t.getType().equals("Incoming Transfer")) continue;
+                long cents = Account.toCents(t.getAmount());
+                long key = key(t, cents);
+                if (!buckets.get(Ledger.bucket(key))) continue;
+                legs.computeIfAbsent(key, k -> new ArrayList<>()).add(new Leg(account.getAccountNumber(), outgoing, cents, t));
+            }
+        }
+    }
+
+    // both legs of a transfer share it: the transfer id, or for older transfers their amount and time window,
+    // which they usually share (see reportUnpairedLegacy for the pairs that straddle two windows)
+    static long key(Transaction t, long cents) {
+        if (t.getTransferId() != 0) return t.getTransferId();
+        return mix(cents * 0x9E3779B97F4A7C15L ^ Math.floorDiv(epochNanos(t.getDateTime()), LEGACY_WINDOW_NANOS));
+    }
+
+    private static long epochNanos(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + time.getNano();
+    }
+
+    // the 64 bit finalizer of MurmurHash3, spreads every input bit over the whole result
+    static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    // signed sums per bucket, a Transfer adds and an Incoming Transfer takes away, so paired legs leave nothing
+    // behind; the key hash catches two unpaired legs of equal amount that happen to share a bucket
+    static class Ledger {
+        private final long[] counts = new long[1 << BUCKET_BITS];
+        private final long[] cents = new long[1 << BUCKET_BITS];
+        private final long[] keys = new long[1 << BUCKET_BITS];
+
+        static int bucket(long key) {
+            return (int) (mix(key) >>> (64 - BUCKET_BITS));
+        }
+
+        void add(long key, boolean outgoing, long amount) {
+            int b = bucket(key);
+            long sign = outgoing ? 1 : -1;
+            counts[b] += sign;
+            cents[b] += sign * amount;
+            keys[b] += sign * mix(key ^ 0x5DEECE66DL); // a different hash from the one picking the bucket
+        }
+
+        void merge(Ledger other) {
+            for (int b = 0; b < counts.length; b++) {
+                counts[b] += other.counts[b];
+                cents[b] += other.cents[b];
+                keys[b] += other.keys[b];
+            }
+        }
+
+        BitSet unbalancedBuckets() {
+            BitSet unbalanced = new BitSet(counts.length);
+            for (int b = 0; b < counts.length; b++) {
+                if (counts[b] != 0 || cents[b] != 0 || keys[b] != 0) unbalanced.set(b);
+            }
+            return unbalanced;
+        }
+    }
+
+    private static class Leg {
+        final int accountNumber;
+        final boolean outgoing;
+        final long cents;
+        final Transaction transaction;
+
+        Leg(int accountNumber, boolean outgoing, long cents, Transaction transaction) {
+            this.accountNumber = accountNumber;
+            this.outgoing = outgoing;
+            this.cents = cents;
+            this.transaction = transaction;
+        }
+
+        public String toString() {
+            String id = transaction.getTransferId() != 0 ? " (transfer " + transaction.getTransferId() + ")" : "";
+            return String.format("%s of $%.2f at %s %s account %s%s", outgoing ? "Transfer" : "Incoming Transfer", cents / 100.0,
+                    transaction.getDateTime(), outgoing ? "from" : "to", Account.formatNumber(accountNumber), id);
+        }
+    }
+
+    // mergeable totals and the discrepancies found, in the order each worker met them
+    public static class Result {
+        private long accounts, transactions, transfers;
+        private long discrepancyCount;
+        private final List<String> discrepancies = new ArrayList<>();
+        private long bytes, millis;
+
+        void report(String discrepancy) {
+            discrepancyCount++;
+            if (discrepancies.size() < MAX_REPORTED) discrepancies.add(discrepancy);
+        }
+
+        void merge(Result other) {
+            accounts += other.accounts;
+            transactions += other.transactions;
+            transfers += other.transfers;
+            for (String discrepancy : other.discrepancies) report(discrepancy);
+            discrepancyCount += other.discrepancyCount - other.discrepancies.size(); // counted but not listed there
+        }
+
+        // getter methods
+        public boolean isConsistent() { return discrepancyCount == 0; }
+        public long getAccounts() { return accounts; }
+        public long getTransactions() { return transactions; }
+        public long getTransfers() { return transfers; }
+        public long getDiscrepancyCount() { return discrepancyCount; }
+        public List<String> getDiscrepancies() { return Collections.unmodifiableList(discrepancies); }
+        public long getMillis() { return millis; }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Integrity check\n");
+            sb.append("----------------------------------------------------------\n");
+            sb.append(String.format("%-22s %d%n", "Accounts:", accounts));
+            sb.append(String.format("%-22s %d%n", "Transactions:", transactions));
+            sb.append(String.format("%-22s %d%n", "Transfers:", transfers));
+            sb.append(String.format("%-22s %d%n", "Discrepancies:", discrepancyCount));
+            for (String discrepancy : discrepancies) sb.append("  ").append(discrepancy).append('\n');
+            if (discrepancyCount > discrepancies.size()) sb.append("  ... and ").append(discrepancyCount - discrepancies.size()).append(" more\n");
+            sb.append(String.format("Checked %.1f MB in %d ms%n", bytes / 1e6, millis));
+            return sb.toString();
+        }
+    }
+
+    // exits with 1 when anything was found, so it can run as a scheduled job
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        List<String> fileNames = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : Collections.singletonList("users.json");
+
+        Result result;
+        try {
+            result = new IntegrityVerifier(threads).verify(fileNames);
+        } catch (IOException e) {
+            System.out.println("Error reading store: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.out.print(result);
+        if (!result.isConsistent()) System.exit(1);
+    }
+}
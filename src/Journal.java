@@ -0,0 +1,550 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Append-only log of changes made since the last full save of users.json
+// each line is one record: a record type followed by tab separated fields
+//
+// records go through a pipeline so no caller ever touches the disk:
+//   1. append() puts the record's fields on a bounded queue and returns its sequence number
+//   2. the encoder thread escapes and encodes queued records into one batch (group commit)
+//   3. batches are written and fsynced through an AsynchronousFileChannel, one at a time, and
+//      every record in a batch is acknowledged together, through whenDurable() or awaitDurable()
+// both queues are bounded: when the disk falls behind the batch queue fills, the encoder stops taking
+// records, and append() waits for room, so memory stays bounded and callers slow down to the disk's pace
+//
+// a failed write or fsync is never acknowledged: awaitDurable, sync and the futures report it with an
+// UncheckedIOException, and so does every later record, since what follows a failed write cannot be
+// trusted; the next clear() that succeeds (the snapshot holds everything by then) starts afresh
+//
+// callers block on ReentrantLocks and Conditions, not monitors, so a virtual thread (Java 21+) waiting for the
+// disk or for room in the queue unmounts from its carrier instead of pinning it
+public class Journal {
+    private static final int MAX_BATCH = 1000; // records that end a batch right away
+    private static final long MAX_DELAY_NANOS = 1_000_000; // longest a record waits for its batch to fill
+    private static final int QUEUED_RECORDS = 64 * 1024; // records waiting for the encoder before append() blocks
+    private static final int QUEUED_BATCHES = 4; // encoded batches waiting for the disk before the encoder blocks
+
+    private final String fileName;
+    private final ReentrantLock appendLock = new ReentrantLock(); // queue order is sequence order
+    private final BlockingQueue<Object> records = new ArrayBlockingQueue<>(QUEUED_RECORDS); // String[] or a Marker
+    private final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+    private final AtomicBoolean writing = new AtomicBoolean(); // a batch is with the channel
+    private AsynchronousFileChannel channel;
+    private long position; // where the next batch goes, only touched by the batch being written
+    private Thread encoder;
+    private volatile boolean closed;
+
+    private long appendedSequence; // number of the last queued record, guarded by appendLock
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durableChanged = durableLock.newCondition(); // signalled as records reach the disk or fail
+    private long durableSequence; // every record up to this number is on disk, guarded by durableLock
+    private volatile Throwable failure; // the write that failed, set under durableLock, null again after a clear
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(); // futures for records not yet on disk, guarded by durableLock
+
+    private volatile int recordCount; // records written since the last snapshot
+    private volatile boolean autoFlush = true; // false while a batch defers durability until sync()
+
+    public Journal(String fileName) {
+        this.fileName = fileName;
+    }
+
+    // a future for one record, completed once the batch holding it is forced to disk
+    private static class Waiter implements Comparable<Waiter> {
+        final long sequence;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Waiter(long sequence) { this.sequence = sequence; }
+
+        public int compareTo(Waiter other) { return Long.compare(sequence, other.sequence); }
+    }
+
+    // sync() and clear() travel the pipeline behind the records queued before them
+    private static class Marker {
+        final boolean clear; // truncate the file, otherwise force it
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Marker(boolean clear) { this.clear = clear; }
+    }
+
+    private static class Batch {
+        final ByteBuffer bytes;
+        final long endSequence; // last record in it
+        final boolean force;
+        final Marker marker; // set for a marker's own batch, which holds no records
+
+        Batch(ByteBuffer bytes, long endSequence, boolean force, Marker marker) {
+            this.bytes = bytes;
+            this.endSequence = endSequence;
+            this.force = force;
+            this.marker = marker;
+        }
+    }
+
+    // queues a record and returns its sequence number, pass it to awaitDurable or whenDurable
+    // blocks only while the pipeline is full, which is the back-pressure
+    public long append(String... fields) {
+        appendLock.lock();
+        try {
+            if (encoder == null) startEncoder();
+            put(fields);
+            recordCount++;
+            return ++appendedSequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // completes once the record with this sequence number is on disk, at once if it already is
+    // in batch mode that is the next sync(); callbacks run on the journal's I/O thread, so keep them short
+    public CompletableFuture<Void> whenDurable(long sequence) {
+        durableLock.lock();
+        try {
+            if (durableSequence >= sequence || closed) return CompletableFuture.completedFuture(null);
+            if (failure != null) {
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(failure);
+                return failed;
+            }
+            Waiter waiter = new Waiter(sequence);
+            waiters.add(waiter);
+            return waiter.future;
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    // blocks until the record with this sequence number is on disk, returns at once in batch mode
+    // throws UncheckedIOException if it cannot get there, the change it records then lives only in memory
+    public void awaitDurable(long sequence) {
+        boolean interrupted = false;
+        durableLock.lock();
+        try {
+            while (autoFlush && durableSequence < sequence && !closed) {
+                if (failure != null) throw unchecked(failure);
+                try {
+                    durableChanged.await();
+                } catch (InterruptedException e) {
+                    interrupted = true; // keep waiting, the caller was promised a durable write
+                }
+            }
+        } finally {
+            durableLock.unlock();
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    // reads every complete record, a half written last line from a crash is ignored
+    // (and cut off before the next write, see trimTornTail)
+    public List<String[]> readRecords() {
+        List<String[]> records = new ArrayList<>();
+        File file = new File(fileName);
+        if (!file.exists()) return records;
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c == '\n') {
+                    records.add(splitFields(line.toString()));
+                    line.setLength(0);
+                } else {
+                    line.append((char) c);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading journal: " + e.getMessage());
+        }
+        recordCount = records.size();
+        return records;
+    }
+
+    // writes out everything queued and waits until it is on disk, throws UncheckedIOException if it is not
+    public void sync() {
+        appendLock.lock();
+        try {
+            if (encoder == null) return;
+        } finally {
+            appendLock.unlock();
+        }
+        runMarker(new Marker(false));
+    }
+
+    public void setAutoFlush(boolean autoFlush) {
+        this.autoFlush = autoFlush;
+        if (autoFlush) sync();
+    }
+
+    // called once the snapshot holds everything, the journal starts over empty
+    // records queued before this are part of the snapshot, they are still written and then cut off with the rest
+    // throws UncheckedIOException if the file could not be truncated
+    public void clear() {
+        recordCount = 0;
+        appendLock.lock();
+        try {
+            if (encoder == null) {
+                try {
+                    new FileOutputStream(fileName).close(); // truncate
+                } catch (IOException e) {
+                    System.out.println("Error clearing journal: " + e.getMessage());
+                    throw unchecked(e);
+                }
+                return;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        runMarker(new Marker(true));
+    }
+
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            closed = true;
+        }
+        appendLock.lock();
+        try {
+            if (encoder != null) encoder.interrupt();
+        } finally {
+            appendLock.unlock();
+        }
+        durableLock.lock();
+        try {
+            durableChanged.signalAll();
+        } finally {
+            durableLock.unlock();
+        }
+        if (channel != null) channel.close();
+    }
+
+    private static UncheckedIOException unchecked(Throwable e) {
+        IOException cause = e instanceof IOException ? (IOException) e : new IOException(e);
+        return new UncheckedIOException("Journal write failed: " + e, cause);
+    }
+
+    private void runMarker(Marker marker) {
+        appendLock.lock();
+        try {
+            put(marker);
+        } finally {
+            appendLock.unlock();
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                marker.done.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (java.util.concurrent.ExecutionException e) {
+                if (interrupted) Thread.currentThread().interrupt();
+                throw unchecked(e.getCause());
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void put(Object record) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                records.put(record);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true; // the record has to go in, the caller already changed memory
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void startEncoder() {
+        encoder = new Thread(this::encodeLoop, "journal-encoder");
+        encoder.setDaemon(true);
+        encoder.start();
+    }
+
+    // stage 2: turns queued records into batches, it sleeps through MAX_DELAY_NANOS after the first record
+    // so appends meanwhile only queue (nobody is waiting to be woken) and then takes everything at once;
+    // a batch ends at MAX_BATCH records or at a marker, which then follows as a batch of its own
+    private void encodeLoop() {
+        long sequence = 0; // of the last record taken, the queue holds them in sequence order
+        List<Object> taken = new ArrayList<>(MAX_BATCH);
+        StringBuilder text = new StringBuilder();
+        try {
+            while (true) {
+                taken.add(records.take());
+                records.drainTo(taken, MAX_BATCH - 1);
+                if (autoFlush && taken.size() < MAX_BATCH && !hasMarker(taken)) {
+                    LockSupport.parkNanos(MAX_DELAY_NANOS);
+                    if (closed) return;
+                    records.drainTo(taken, MAX_BATCH - taken.size());
+                }
+
+                int count = 0;
+                for (Object next : taken) {
+                    if (next instanceof String[]) {
+                        encode((String[]) next, text);
+                        sequence++;
+                        count++;
+                    } else {
+                        if (count > 0) emit(text, sequence);
+                        count = 0;
+                        batches.put(new Batch(null, sequence, true, (Marker) next));
+                        writeNext();
+                    }
+                }
+                if (count > 0) emit(text, sequence);
+                taken.clear();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void emit(StringBuilder text, long endSequence) throws InterruptedException {
+        batches.put(new Batch(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)), endSequence, autoFlush, null));
+        text.setLength(0);
+        writeNext();
+    }
+
+    private static boolean hasMarker(List<Object> taken) {
+        for (Object next : taken) {
+            if (next instanceof Marker) return true;
+        }
+        return false;
+    }
+
+    private static void encode(String[] fields, StringBuilder text) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) text.append('\t');
+            text.append(escape(fields[i]));
+        }
+        text.append('\n');
+    }
+
+    // stage 3: hands the oldest batch to the channel unless one is already there, called by the encoder
+    // when it adds a batch and by the completion handler when a batch is done
+    private void writeNext() {
+        while (!batches.isEmpty() && writing.compareAndSet(false, true)) {
+            Batch batch = batches.poll();
+            if (batch == null) {
+                writing.set(false); // taken by the other caller in between
+                continue;
+            }
+            if (batch.marker != null) {
+                applyMarker(batch);
+            } else if (failure != null) {
+                done(merge(batch), failure); // not written after a gap, the next clear makes up for it
+            } else {
+                write(merge(batch));
+            }
+            return;
+        }
+    }
+
+    // everything that queued up while the last batch was on its way goes out with one write and one fsync
+    private Batch merge(Batch batch) {
+        if (batches.isEmpty() || batches.peek().marker != null) return batch;
+        List<Batch> parts = new ArrayList<>();
+        parts.add(batch);
+        int size = batch.bytes.remaining();
+        Batch next;
+        while ((next = batches.peek()) != null && next.marker == null) {
+            parts.add(batches.poll()); // only this thread takes from the queue while writing is set
+            size += next.bytes.remaining();
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        boolean force = false;
+        for (Batch part : parts) {
+            bytes.put(part.bytes);
+            force |= part.force;
+        }
+        bytes.flip();
+        return new Batch(bytes, parts.get(parts.size() - 1).endSequence, force, null);
+    }
+
+    private void write(Batch batch) {
+        try {
+            if (channel == null) {
+                trimTornTail();
+                channel = AsynchronousFileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                position = channel.size();
+            }
+        } catch (IOException e) {
+            failed(batch, e);
+            return;
+        }
+        channel.write(batch.bytes, position, batch, new CompletionHandler<Integer, Batch>() {
+            public void completed(Integer written, Batch batch) {
+                position += written;
+                if (batch.bytes.hasRemaining()) { // a short write, carry on from where it stopped
+                    channel.write(batch.bytes, position, batch, this);
+                    return;
+                }
+                try {
+                    if (batch.force) channel.force(false); // one fsync for the whole batch
+                } catch (IOException e) {
+                    Journal.this.failed(batch, e);
+                    return;
+                }
+                done(batch, null);
+            }
+
+            public void failed(Throwable e, Batch batch) {
+                Journal.this.failed(batch, e);
+            }
+        });
+    }
+
+    // a crash part way through a write can leave a last line without its '\n'; appending after it would
+    // join the next record onto the fragment and lose both on replay, so the file is cut back to its last
+    // complete record first ('\n' never occurs inside a UTF-8 multibyte character)
+    private void trimTornTail() throws IOException {
+        File file = new File(fileName);
+        if (!file.exists()) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            long end = length;
+            byte[] block = new byte[8192];
+            long keep = 0;
+            search:
+            while (end > 0) {
+                int n = (int) Math.min(block.length, end);
+                raf.seek(end - n);
+                raf.readFully(block, 0, n);
+                for (int i = n - 1; i >= 0; i--) {
+                    if (block[i] == '\n') {
+                        keep = end - n + i + 1;
+                        break search;
+                    }
+                }
+                end -= n;
+            }
+            if (keep < length) {
+                System.out.println("Journal " + fileName + " ends in a half written record, dropping its last " + (length - keep) + " bytes");
+                raf.setLength(keep);
+                raf.getFD().sync();
+            }
+        }
+    }
+
+    // sync or clear, on the writer's turn so everything queued before it is already written
+    // a sync fails while an earlier write has, a clear that succeeds lets writes resume
+    private void applyMarker(Batch batch) {
+        Throwable error = null;
+        try {
+            if (batch.marker.clear) {
+                if (failure != null && channel != null) {
+                    AsynchronousFileChannel broken = channel;
+                    channel = null; // the channel may be what failed, the next write opens the file afresh
+                    broken.close();
+                }
+                if (channel != null) {
+                    channel.truncate(0);
+                    channel.force(true);
+                } else {
+                    new FileOutputStream(fileName).close();
+                }
+                position = 0;
+                durableLock.lock();
+                try {
+                    failure = null;
+                } finally {
+                    durableLock.unlock();
+                }
+            } else if (failure != null) {
+                error = failure;
+            } else if (channel != null) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            System.out.println("Error " + (batch.marker.clear ? "clearing" : "syncing") + " journal: " + e.getMessage());
+            error = e;
+        }
+        done(batch, error);
+        if (error == null) batch.marker.done.complete(null);
+        else batch.marker.done.completeExceptionally(error);
+    }
+
+    private void failed(Batch batch, Throwable e) {
+        System.out.println("Error writing journal: " + e.getMessage());
+        done(batch, e);
+    }
+
+    // acknowledges the batch's records and starts the next batch before running anyone's callbacks
+    // after an error nothing is acknowledged, every waiter is told instead since none of them can get to disk
+    private void done(Batch batch, Throwable error) {
+        List<Waiter> ready = new ArrayList<>();
+        durableLock.lock();
+        try {
+            if (error != null) {
+                if (failure == null) failure = error;
+                ready.addAll(waiters);
+                waiters.clear();
+                durableChanged.signalAll(); // blocking waiters throw
+            } else if (batch.force) {
+                durableSequence = Math.max(durableSequence, batch.endSequence);
+                durableChanged.signalAll();
+                while (!waiters.isEmpty() && waiters.peek().sequence <= durableSequence) ready.add(waiters.poll());
+            }
+        } finally {
+            durableLock.unlock();
+        }
+        writing.set(false);
+        writeNext();
+        for (Waiter waiter : ready) {
+            if (error == null) waiter.future.complete(null);
+            else waiter.future.completeExceptionally(error);
+        }
+    }
+
+    public int getQueuedRecords() { return records.size(); }
+    public int getRecordCount() { return recordCount; }
+    public long getFileSize() { return new File(fileName).length(); }
+
+    private static String escape(String value) {
+        if (value == null) return "";
+        StringBuilder sb = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '\\') sb.append("\\\\");
+            else if (c == '\t') sb.append("\\t");
+            else if (c == '\n') sb.append("\\n");
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String[] splitFields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                field.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+}
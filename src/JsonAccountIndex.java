@@ -0,0 +1,156 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Sidecar index next to users.json (users.json.idx) so startup does not have to parse the whole file
+// it holds what UserManager needs before an account is used: username, account number, balance,
+// transaction count and where the account's object sits in users.json. Accounts are loaded from it
+// as shells and their full record is read from users.json the first time something needs it
+//
+// header: int magic, int version, long json length, long json last modified, int account count
+// entry:  utf userName, int accountNumber, long balance (cents), int transaction count, long offset, int length
+public class JsonAccountIndex implements Closeable {
+    private static final int MAGIC = 0x4A4D4958; // "JMIX"
+    private static final int VERSION = 1;
+
+    private final FileChannel json; // the snapshot (or AccountCache spill file) the offsets point into
+    final AccountCache cache; // gets accounts loaded from here, null when every account stays in memory
+    final ColumnarTransactionStore columns; // keeps the histories of accounts loaded from here, null to keep objects
+    private long end; // where the next append goes, spill files only
+
+    private JsonAccountIndex(FileChannel json, AccountCache cache, ColumnarTransactionStore columns) {
+        this.json = json;
+        this.cache = cache;
+        this.columns = columns;
+    }
+
+    // where one account's object is in the snapshot, and the balance it was saved with
+    public static class Entry {
+        final JsonAccountIndex file;
+        final long offset;
+        final int length;
+        final long savedBalanceCents;
+        final int transactionCount;
+
+        Entry(JsonAccountIndex file, long offset, int length, long savedBalanceCents, int transactionCount) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.savedBalanceCents = savedBalanceCents;
+            this.transactionCount = transactionCount;
+        }
+
+        // the account's JSON object exactly as it is in the file
+        byte[] readBytes() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (file.json.read(buffer, offset + buffer.position()) < 0) throw new EOFException("users.json is shorter than its index");
+            }
+            return buffer.array();
+        }
+
+        Account load() throws IOException {
+            return JsonAccountReader.parseAccount(new String(readBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    static String indexName(String fileName) {
+        return fileName + ".idx";
+    }
+
+    // hands a shell for every indexed account to the consumer and returns the open snapshot they read from,
+    // null (and nothing loaded) if the index is missing or was written for a different version of the JSON file
+    public static JsonAccountIndex load(String fileName, AccountCache cache, ColumnarTransactionStore columns,
+                                        Consumer<Account> consumer) throws IOException {
+        File index = new File(indexName(fileName));
+        File snapshot = new File(fileName);
+        if (!index.exists() || !snapshot.exists()) return null;
+
+        JsonAccountIndex file = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (in.readLong() != snapshot.length() || in.readLong() != snapshot.lastModified()) return null; // edited by hand
+
+            file = new JsonAccountIndex(FileChannel.open(snapshot.toPath(), StandardOpenOption.READ), cache, columns);
+            int count = in.readInt();
+            List<Account> shells = new ArrayList<>(count); // handed over only once the whole index has been read
+            for (int i = 0; i < count; i++) {
+                String userName = in.readUTF();
+                int accountNumber = in.readInt();
+                long balanceCents = in.readLong();
+                int transactionCount = in.readInt();
+                long offset = in.readLong();
+                int length = in.readInt();
+                shells.add(Account.shell(userName, accountNumber, new Entry(file, offset, length, balanceCents, transactionCount)));
+            }
+            shells.forEach(consumer);
+            return file;
+        } catch (IOException e) {
+            if (file != null) file.close();
+            throw e;
+        }
+    }
+
+    // writes the index for a snapshot that was just saved, spans holds offset and length for each account in turn
+    // every account is pointed at its place in the new file, which is returned open
+    public static JsonAccountIndex write(String fileName, List<Account> accounts, long[] spans, AccountCache cache,
+                                         ColumnarTransactionStore columns) throws IOException {
+        File snapshot = new File(fileName);
+        Path target = Paths.get(indexName(fileName)).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile()), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.length());
+            out.writeLong(snapshot.lastModified());
+            out.writeInt(accounts.size());
+            for (int i = 0; i < accounts.size(); i++) {
+                Account account = accounts.get(i);
+                out.writeUTF(account.getUserName());
+                out.writeInt(account.getAccountNumber());
+                out.writeLong(account.getBalanceCents());
+                out.writeInt(account.getTransactionCount());
+                out.writeLong(spans[2 * i]);
+                out.writeInt((int) spans[2 * i + 1]);
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // accounts still point at the file that was just replaced, move them over to the new one
+        JsonAccountIndex file = new JsonAccountIndex(FileChannel.open(snapshot.toPath(), StandardOpenOption.READ), cache, columns);
+        for (int i = 0; i < accounts.size(); i++) {
+            Account account = accounts.get(i);
+            account.relocate(new Entry(file, spans[2 * i], (int) spans[2 * i + 1], account.getBalanceCents(), account.getTransactionCount()));
+        }
+        return file;
+    }
+
+    // an empty file for AccountCache to append accounts to, nothing in it outlives the process
+    static JsonAccountIndex createSpill(String fileName, AccountCache cache) throws IOException {
+        return new JsonAccountIndex(FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), cache, null);
+    }
+
+    // not forced to disk, the journal already holds every change in it
+    synchronized Entry append(byte[] account, long balanceCents, int transactionCount) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(account);
+        long offset = end;
+        while (buffer.hasRemaining()) json.write(buffer, offset + buffer.position());
+        end += account.length;
+        return new Entry(this, offset, account.length, balanceCents, transactionCount);
+    }
+
+    public void close() throws IOException {
+        json.close();
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reads accounts out of a users.json stream one at a time, in a single pass
+// nothing but the account being built is kept in memory
+public class JsonAccountReader implements Closeable {
+    private final Reader reader;
+    private final char[] buffer = new char[64 * 1024];
+    private int position; // next unread char in the buffer
+    private int limit; // number of valid chars in the buffer
+    private long offset; // chars consumed before the current buffer, used for error messages
+    private boolean started; // has the opening '[' been read
+    private final StringBuilder token = new StringBuilder(); // reused for every string and number
+
+    public JsonAccountReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    // returns the next account in the array, or null once the array is finished
+    public Account nextAccount() throws IOException {
+        if (!started) {
+            if (peek() == -1) return null; // empty file
+            expect('[');
+            started = true;
+            if (peek() == ']') {
+                position++;
+                return null;
+            }
+        } else {
+            int c = peek();
+            if (c == ']' || c == -1) {
+                if (c == ']') position++;
+                return null;
+            }
+            expect(',');
+        }
+        return readAccount();
+    }
+
+    // one account object on its own, as cut out of users.json by JsonAccountIndex
+    static Account parseAccount(String json) throws IOException {
+        return new JsonAccountReader(new StringReader(json)).readAccount();
+    }
+
+    private Account readAccount() throws IOException {
+        String userName = null, pin = null, dateOfBirth = null, accountNumber = null, routingNumber = null;
+        double balance = 0;
+        List<Transaction> transactions = new ArrayList<>();
+        AccountStatistics statistics = null;
+
+        expect('{');
+        if (peek() == '}') {
+            position++;
+        } else {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "userName": userName = readString(); break;
+                    case "pin": pin = readString(); break;
+                    case "dateOfBirth": dateOfBirth = readString(); break;
+                    case "balance": balance = readNumber(); break;
+                    case "accountNumber": accountNumber = readString(); break;
+                    case "routingNumber": routingNumber = readString(); break;
+                    case "transactions": readTransactions(transactions); break;
+                    case "statistics": statistics = readStatistics(); break;
+                    default: skipValue(); // unknown fields are ignored
+                }
+            } while (nextMember('}'));
+        }
+
+        if (userName == null || accountNumber == null) throw error("account is missing userName or accountNumber");
+        Account account = new Account(pin, userName, dateOfBirth == null ? null : LocalDate.parse(dateOfBirth), balance, accountNumber, routingNumber);
+        if (statistics != null && statistics.matches(account.getBalanceCents(), transactions.size())) {
+            account.setTransactions(transactions, statistics);
+        } else {
+            account.setTransactions(transactions); // older file, or the balance was changed by hand
+        }
+        return account;
+    }
+
+    private AccountStatistics readStatistics() throws IOException {
+        double opening = 0;
+        Map<Long, AccountStatistics.Bucket> days = new LinkedHashMap<>(); // added once the opening balance is known
+        int transactionCount = 0;
+        List<Long> checkpoints = new ArrayList<>();
+
+        expect('{');
+        if (peek() == '}') {
+            position++;
+        } else {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "openingBalance": opening = readNumber(); break;
+                    case "transactionCount": transactionCount = (int) readNumber(); break;
+                    case "checkpoints":
+                        expect('[');
+                        if (peek() == ']') {
+                            position++;
+                        } else {
+                            do {
+                                checkpoints.add(Account.toCents(readNumber()));
+                            } while (nextMember(']'));
+                        }
+                        break;
+                    case "days":
+                        expect('[');
+                        if (peek() == ']') {
+                            position++;
+                        } else {
+                            do {
+                                readDay(days);
+                            } while (nextMember(']'));
+                        }
+                        break;
+                    default: skipValue();
+                }
+            } while (nextMember('}'));
+        }
+
+        AccountStatistics statistics = new AccountStatistics(Account.toCents(opening));
+        for (Map.Entry<Long, AccountStatistics.Bucket> day : days.entrySet()) statistics.putDay(day.getKey(), day.getValue());
+        long[] balances = new long[checkpoints.size()];
+        for (int i = 0; i < balances.length; i++) balances[i] = checkpoints.get(i);
+        statistics.putCheckpoints(transactionCount, balances);
+        return statistics;
+    }
+
+    private void readDay(Map<Long, AccountStatistics.Bucket> days) throws IOException {
+        String date = null;
+        AccountStatistics.Bucket b = new AccountStatistics.Bucket();
+
+        expect('{');
+        if (peek() == '}') {
+            position++;
+        } else {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "date": date = readString(); break;
+                    case "deposits": b.deposits = (int) readNumber(); break;
+                    case "deposited": b.depositedCents = Account.toCents(readNumber()); break;
+                    case "withdrawals": b.withdrawals = (int) readNumber(); break;
+                    case "withdrawn": b.withdrawnCents = Account.toCents(readNumber()); break;
+                    case "transfersOut": b.transfersOut = (int) readNumber(); break;
+                    case "transferredOut": b.transferredOutCents = Account.toCents(readNumber()); break;
+                    case "transfersIn": b.transfersIn = (int) readNumber(); break;
+                    case "transferredIn": b.transferredInCents = Account.toCents(readNumber()); break;
+                    case "largestTransfer": b.largestTransferCents = Account.toCents(readNumber()); break;
+                    case "closingBalance": b.closingCents = Account.toCents(readNumber()); break;
+                    default: skipValue();
+                }
+            } while (nextMember('}'));
+        }
+
+        if (date == null) throw error("statistics day is missing its date");
+        days.put(LocalDate.parse(date).toEpochDay(), b);
+    }
+
+    private void readTransactions(List<Transaction> transactions) throws IOException {
+        expect('[');
+        if (peek() == ']') {
+            position++;
+            return;
+        }
+        do {
+            transactions.add(readTransaction());
+        } while (nextMember(']'));
+    }
+
+    private Transaction readTransaction() throws IOException {
+        String type = null, dateTime = null;
+        double amount = 0;
+        long transferId = 0;
+
+        expect('{');
+        if (peek() == '}') {
+            position++;
+        } else {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "type": type = readString(); break;
+                    case "amount": amount = readNumber(); break;
+                    case "dateTime": dateTime = readString(); break;
+                    case "transferId": transferId = Long.parseLong(readString()); break;
+                    default: skipValue();
+                }
+            } while (nextMember('}'));
+        }
+
+        if (type == null || dateTime == null) throw error("transaction is missing type or dateTime");
+        return new Transaction(type, amount, parseDateTime(dateTime), transferId);
+    }
+
+    // hand parses the yyyy-MM-ddTHH:mm:ss.fraction form saveAccounts writes, which is much cheaper
+    // than going through a DateTimeFormatter for every transaction
+    static LocalDateTime parseDateTime(String text) {
+        int length = text.length();
+        if (length < 16 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T' || text.charAt(13) != ':') {
+            return LocalDateTime.parse(text);
+        }
+        try {
+            int second = 0, nano = 0;
+            if (length >= 19) {
+                if (text.charAt(16) != ':') return LocalDateTime.parse(text);
+                second = digits(text, 17, 19);
+                if (length > 20) {
+                    if (text.charAt(19) != '.' || length > 29) return LocalDateTime.parse(text);
+                    nano = digits(text, 20, length);
+                    for (int i = length; i < 29; i++) nano *= 10; // pad the fraction out to nanoseconds
+                }
+            } else if (length != 16) {
+                return LocalDateTime.parse(text);
+            }
+            return LocalDateTime.of(digits(text, 0, 4), digits(text, 5, 7), digits(text, 8, 10),
+                    digits(text, 11, 13), digits(text, 14, 16), second, nano);
+        } catch (NumberFormatException e) {
+            return LocalDateTime.parse(text); // let the real parser report the problem
+        }
+    }
+
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException(text);
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // after a value: true if a ',' follows, false if the closing char follows
+    private boolean nextMember(char close) throws IOException {
+        int c = peek();
+        position++;
+        if (c == ',') return true;
+        if (c == close) return false;
+        throw error("expected ',' or '" + close + "'");
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        token.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) throw error("unterminated string");
+            if (c == '"') return token.toString();
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'n': token.append('\n'); break;
+                    case 't': token.append('\t'); break;
+                    case 'r': token.append('\r'); break;
+                    case 'b': token.append('\b'); break;
+                    case 'f': token.append('\f'); break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) code = code * 16 + Character.digit(read(), 16);
+                        token.append((char) code);
+                        break;
+                    default: token.append((char) c); // covers \" \\ and \/
+                }
+            } else {
+                token.append((char) c);
+            }
+        }
+    }
+
+    private double readNumber() throws IOException {
+        skipWhitespace();
+        token.setLength(0);
+        while (true) {
+            int c = peekRaw();
+            if (c == -1 || !(Character.isDigit(c) || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E')) break;
+            token.append((char) c);
+            position++;
+        }
+        if (token.length() == 0) throw error("expected a number");
+        return Double.parseDouble(token.toString());
+    }
+
+    private void skipValue() throws IOException {
+        int c = peek();
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            char close = c == '{' ? '}' : ']';
+            position++;
+            if (peek() == close) {
+                position++;
+                return;
+            }
+            do {
+                if (close == '}') {
+                    readString();
+                    expect(':');
+                }
+                skipValue();
+            } while (nextMember(close));
+        } else {
+            // number, true, false or null
+            while ((c = peekRaw()) != -1 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) position++;
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peek() != expected) throw error("expected '" + expected + "'");
+        position++;
+    }
+
+    // next non whitespace char without consuming it
+    private int peek() throws IOException {
+        skipWhitespace();
+        return peekRaw();
+    }
+
+    private void skipWhitespace() throws IOException {
+        int c;
+        while ((c = peekRaw()) != -1 && Character.isWhitespace(c)) position++;
+    }
+
+    private int peekRaw() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++];
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = 0;
+        limit = Math.max(reader.read(buffer, 0, buffer.length), 0);
+        return limit > 0;
+    }
+
+    private IOException error(String message) {
+        return new IOException("Malformed JSON at char " + (offset + position) + ": " + message);
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+// The users.json format, read and written with the streaming reader and writer
+// with an up to date users.json.idx beside it, load only reads the index and accounts fill themselves in on first use
+public class JsonAccountStore implements AccountStore {
+    private final String fileName;
+    private final AccountCache cache; // null when every account that was used stays in memory
+    private final ColumnarTransactionStore columns; // holds every history read, null to keep them as Transaction objects
+    private JsonAccountIndex snapshot; // the users.json that accounts not loaded yet read from, null after a full parse
+
+    public JsonAccountStore(String fileName) {
+        this(fileName, 0);
+    }
+
+    // at most cachedAccounts accounts keep their history in memory, 0 for no limit
+    public JsonAccountStore(String fileName, int cachedAccounts) {
+        this(fileName, cachedAccounts, null);
+    }
+
+    public JsonAccountStore(String fileName, int cachedAccounts, ColumnarTransactionStore columns) {
+        this.fileName = fileName;
+        this.columns = columns;
+        AccountCache cache = null;
+        if (cachedAccounts > 0) {
+            try {
+                cache = new AccountCache(fileName, cachedAccounts);
+            } catch (IOException e) {
+                System.out.println("Error creating account cache, keeping every account in memory: " + e.getMessage());
+            }
+        }
+        this.cache = cache;
+    }
+
+    public void load(Consumer<Account> consumer) throws IOException {
+        try {
+            snapshot = JsonAccountIndex.load(fileName, cache, columns, consumer);
+            if (snapshot != null) return;
+        } catch (IOException e) {
+            System.out.println("Error reading account index, loading the full file: " + e.getMessage());
+        }
+
+        try (JsonAccountReader reader = new JsonAccountReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8))) { // UTF-8, as JsonAccountWriter wrote it
+            Account account;
+            while ((account = reader.nextAccount()) != null) {
+                if (columns != null) columns.adopt(account); // one at a time, the objects never pile up
+                consumer.accept(account);
+            }
+        }
+    }
+
+    public void save(List<Account> accounts) throws IOException {
+        long[] spans = JsonAccountWriter.save(accounts, fileName);
+        JsonAccountIndex previous = snapshot;
+        if (cache != null) cache.lockWriteBacks();
+        try {
+            snapshot = JsonAccountIndex.write(fileName, accounts, spans, cache, columns);
+            if (cache != null) cache.clearSpill(); // every account reads from the new users.json now
+        } catch (IOException e) {
+            // users.json is saved, the stale index is turned away by its length and time next start
+            System.out.println("Error writing account index: " + e.getMessage());
+            return;
+        } finally {
+            if (cache != null) cache.unlockWriteBacks();
+        }
+        if (previous != null) previous.close();
+        if (cache != null) cache.admitAll(accounts);
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+// Writes accounts in the users.json format one at a time, so memory use does not grow with the data
+public class JsonAccountWriter implements Closeable {
+    private final Writer writer;
+    private final ByteCounter bytes; // bytes written so far, null when writing to a caller's Writer
+    private boolean first = true; // no comma before the first account
+    private long objectStart, objectEnd; // where the last account's object landed, when bytes are counted
+
+    public JsonAccountWriter(Writer writer) throws IOException {
+        this(writer, null);
+    }
+
+    private JsonAccountWriter(Writer writer, ByteCounter bytes) throws IOException {
+        this(writer, bytes, true);
+    }
+
+    private JsonAccountWriter(Writer writer, ByteCounter bytes, boolean array) throws IOException {
+        this.writer = writer;
+        this.bytes = bytes;
+        if (array) writer.write("[\n");
+    }
+
+    // writes everything to a temp file next to fileName, syncs it and renames it over fileName
+    // a crash at any point leaves either the old or the new file, never a truncated one
+    // returns the byte offset and length of each account's object in turn, for JsonAccountIndex
+    public static long[] save(List<Account> accounts, String fileName) throws IOException {
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long[] spans = new long[2 * accounts.size()];
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteCounter bytes = new ByteCounter(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            JsonAccountWriter json = new JsonAccountWriter(new BufferedWriter(
+                    new OutputStreamWriter(bytes, StandardCharsets.UTF_8), 64 * 1024), bytes);
+            for (int i = 0; i < accounts.size(); i++) {
+                json.writeAccount(accounts.get(i));
+                spans[2 * i] = json.objectStart;
+                spans[2 * i + 1] = json.objectEnd - json.objectStart;
+            }
+            json.finish();
+            bytes.flushThrough();
+            channel.force(true); // make sure the data is on disk before the rename
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return spans;
+    }
+
+    public void writeAccount(Account account) throws IOException {
+        writer.write(first ? "  " : ",\n  ");
+        first = false;
+        if (bytes == null) {
+            writeObject(account, account.getBalanceCents(), account.getTransactions(), account.getStatistics());
+            return;
+        }
+
+        writer.flush(); // so the count is exact
+        objectStart = bytes.count;
+        JsonAccountIndex.Entry saved = account.getSavedEntry();
+        if (saved != null && saved.savedBalanceCents == account.getBalanceCents()) {
+            bytes.write(saved.readBytes()); // unchanged since it was last written, copy it as it is instead of loading it
+        } else {
+            writeObject(account, account.getBalanceCents(), account.getTransactions(), account.getStatistics());
+            writer.flush();
+        }
+        objectEnd = bytes.count;
+    }
+
+    // one account object on its own, for AccountCache to write out an account it drops from memory
+    // the balance is the one the history adds up to, any move not yet in the history is still in memory
+    static byte[] toJson(Account account, Account.History history) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 + 96 * history.transactions.size());
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            JsonAccountWriter json = new JsonAccountWriter(writer, null, false);
+            json.writeObject(account, history.statistics.getBalanceCents(), history.transactions, history.statistics);
+        }
+        return out.toByteArray();
+    }
+
+    private void writeObject(Account account, long balanceCents, List<Transaction> transactions, AccountStatistics statistics) throws IOException {
+        writer.write("{\n");
+
+        // Write account basic information
+        writeField("userName", account.getUserName());
+        writeField("pin", account.getPin());
+        writeField("dateOfBirth", String.valueOf(account.getDateOfBirth()));
+        writer.write("    \"balance\": ");
+        writer.write(String.valueOf(balanceCents / 100.0));
+        writer.write(",\n");
+        writeField("accountNumber", Account.formatNumber(account.getAccountNumber()));
+        writeField("routingNumber", Account.formatNumber(account.getRoutingNumber()));
+
+        // Write transactions array
+        writer.write("    \"transactions\": [");
+        for (int j = 0; j < transactions.size(); j++) {
+            Transaction t = transactions.get(j);
+            writer.write(j == 0 ? "\n      {\n" : ",\n      {\n");
+            writer.write("        \"type\": ");
+            writeString(t.getType());
+            writer.write(",\n        \"amount\": ");
+            writer.write(String.valueOf(t.getAmount()));
+            writer.write(",\n        \"dateTime\": \"");
+            writer.write(t.getDateTime().toString());
+            if (t.getTransferId() != 0) { // a string like the account numbers, a double cannot hold every long
+                writer.write("\",\n        \"transferId\": \"");
+                writer.write(String.valueOf(t.getTransferId()));
+            }
+            writer.write("\"\n      }");
+        }
+        writer.write(transactions.isEmpty() ? "],\n" : "\n    ],\n");
+
+        // Write statistics, one line per day that had transactions
+        writer.write("    \"statistics\": {\n      \"openingBalance\": ");
+        writer.write(String.valueOf(statistics.getOpeningCents() / 100.0));
+        writer.write(",\n      \"transactionCount\": ");
+        writer.write(String.valueOf(statistics.getTransactionCount()));
+        writer.write(",\n      \"checkpoints\": ["); // balance after every CHECKPOINT_INTERVAL transactions
+        for (int i = 0; i < statistics.getCheckpointCount(); i++) {
+            if (i > 0) writer.write(", ");
+            writer.write(String.valueOf(statistics.getCheckpoint(i) / 100.0));
+        }
+        writer.write("],\n      \"days\": [");
+        boolean firstDay = true;
+        for (Map.Entry<Long, AccountStatistics.Bucket> day : statistics.getDays().entrySet()) {
+            AccountStatistics.Bucket b = day.getValue();
+            writer.write(firstDay ? "\n        {\"date\": \"" : ",\n        {\"date\": \"");
+            firstDay = false;
+            writer.write(LocalDate.ofEpochDay(day.getKey()).toString());
+            writer.write("\", \"deposits\": " + b.getDeposits() + ", \"deposited\": " + b.getDepositedCents() / 100.0
+                    + ", \"withdrawals\": " + b.getWithdrawals() + ", \"withdrawn\": " + b.getWithdrawnCents() / 100.0
+                    + ", \"transfersOut\": " + b.getTransfersOut() + ", \"transferredOut\": " + b.getTransferredOutCents() / 100.0
+                    + ", \"transfersIn\": " + b.getTransfersIn() + ", \"transferredIn\": " + b.getTransferredInCents() / 100.0
+                    + ", \"largestTransfer\": " + b.getLargestTransferCents() / 100.0
+                    + ", \"closingBalance\": " + b.getClosingCents() / 100.0 + "}");
+        }
+        writer.write(firstDay ? "]\n    }\n  }" : "\n      ]\n    }\n  }");
+    }
+
+    // closes the array, called once after the last account
+    public void finish() throws IOException {
+        writer.write(first ? "]\n" : "\n]\n");
+        writer.flush();
+    }
+
+    private void writeField(String key, String value) throws IOException {
+        writer.write("    \"");
+        writer.write(key);
+        writer.write("\": ");
+        writeString(value);
+        writer.write(",\n");
+    }
+
+    private void writeString(String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    // counts the bytes on their way to the file, flush only goes as far as here so the
+    // per account flushes do not turn into a write call each
+    private static class ByteCounter extends FilterOutputStream {
+        long count;
+
+        ByteCounter(OutputStream out) {
+            super(out);
+        }
+
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public void flush() {
+        }
+
+        void flushThrough() throws IOException {
+            out.flush();
+        }
+    }
+}
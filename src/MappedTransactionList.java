@@ -0,0 +1,46 @@
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+// Transaction history backed by fixed size records in a memory mapped store file
+// records are only turned into Transaction objects when they are asked for, new
+// transactions are kept on the heap after the mapped ones
+public class MappedTransactionList extends AbstractList<Transaction> {
+    private final ByteBuffer records; // this account's records, read with absolute gets only
+    private final int mappedCount;
+    private final int recordSize; // depends on the version of the store file
+    private final List<Transaction> added = new ArrayList<>(); // appended since the store was loaded
+
+    public MappedTransactionList(ByteBuffer records, int mappedCount, int recordSize) {
+        this.records = records;
+        this.mappedCount = mappedCount;
+        this.recordSize = recordSize;
+    }
+
+    public Transaction get(int index) {
+        if (index < mappedCount) {
+            if (index < 0) throw new IndexOutOfBoundsException("Index: " + index);
+            return BinaryAccountStore.decodeTransaction(records, index * recordSize, recordSize);
+        }
+        return added.get(index - mappedCount);
+    }
+
+    public int size() {
+        return mappedCount + added.size();
+    }
+
+    public boolean add(Transaction transaction) {
+        modCount++;
+        return added.add(transaction);
+    }
+
+    // the raw records, so a save can copy them without decoding
+    ByteBuffer mappedRecords() {
+        return records.duplicate();
+    }
+
+    int getMappedCount() { return mappedCount; }
+    int getRecordSize() { return recordSize; }
+    List<Transaction> getAdded() { return added; }
+}
@@ -0,0 +1,147 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Process wide counters, latency histograms and gauges for the banking operations
+// the hot path only does atomic adds into preallocated cells, nothing is allocated per operation;
+// text for MetricsExporter is built when someone reads it
+public class Metrics {
+    private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>(); // sorted so dumps are stable
+    private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    // the instruments used on the hot paths, looked up once here rather than by name on every call
+    public static final Histogram LOGIN = histogram("login");
+    public static final Counter LOGIN_FAILURES = counter("login_failures");
+    public static final Histogram DEPOSIT = histogram("deposit");
+    public static final Histogram WITHDRAW = histogram("withdraw");
+    public static final Histogram TRANSFER = histogram("transfer");
+    public static final Counter REFUSED = counter("refused_operations"); // insufficient funds and the like
+    public static final Counter TRANSFER_RETRIES = counter("transfer_retries"); // answered from an idempotency key
+    public static final Histogram SAVE_ACCOUNTS = histogram("save_accounts");
+    public static final Histogram LOAD_ACCOUNTS = histogram("load_accounts");
+    public static final Histogram LOAD_ACCOUNT = histogram("load_account"); // one account read back from disk
+    public static final Counter CACHE_HITS = counter("cache_hits"); // history used while in memory
+    public static final Counter CACHE_MISSES = counter("cache_misses"); // history read from disk first
+    public static final Counter CACHE_EVICTIONS = counter("cache_evictions");
+    public static final Counter CACHE_WRITE_BACKS = counter("cache_write_backs"); // evicted accounts that had changed
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    // read only when metrics are exported; labels tell apart the instances behind one name (see label), and a
+    // later registration under the same name and labels replaces it
+    public static void gauge(String name, String labels, LongSupplier value) {
+        gauges.put(name + "{" + labels + "}", value);
+    }
+
+    // drops every gauge registered with these labels, so their owner is no longer kept reachable
+    public static void removeGauges(String labels) {
+        String suffix = "{" + labels + "}";
+        gauges.keySet().removeIf(series -> series.endsWith(suffix));
+    }
+
+    // one Prometheus label, e.g. store="users-0.json"
+    public static String label(String name, String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    // Prometheus text format, latencies as summaries in seconds
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            sb.append("bank_").append(counter.getKey()).append("_total ").append(counter.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> gauge : new ConcurrentSkipListMap<>(gauges).entrySet()) {
+            sb.append("bank_").append(gauge.getKey()).append(' ').append(gauge.getValue().getAsLong()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            String name = "bank_" + entry.getKey() + "_seconds";
+            Histogram h = entry.getValue();
+            for (double q : new double[] {0.5, 0.9, 0.99, 0.999}) {
+                sb.append(name).append("{quantile=\"").append(q).append("\"} ").append(h.percentile(q) / 1e9).append('\n');
+            }
+            sb.append(name).append("_max ").append(h.getMax() / 1e9).append('\n');
+            sb.append(name).append("_sum ").append(h.getSum() / 1e9).append('\n');
+            sb.append(name).append("_count ").append(h.getCount()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static class Counter {
+        private final LongAdder count = new LongAdder(); // striped, so busy threads do not fight over one cell
+
+        public void increment() { count.increment(); }
+        public long get() { return count.sum(); }
+    }
+
+    // HDR style log-linear histogram of nanosecond latencies: every power of two is split into
+    // 32 linear sub-buckets, so any recorded value is known to within about 3% over the full long range
+    public static class Histogram {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        // usage: long start = System.nanoTime(); ... Metrics.DEPOSIT.recordSince(start);
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            counts.incrementAndGet(index(nanos));
+            total.increment();
+            sum.add(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+                // another thread raised the max, compare again
+            }
+        }
+
+        // upper edge of the bucket holding the q-th value, so the answer never understates the latency
+        public long percentile(double q) {
+            long count = total.sum();
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return Math.min(lowest(i + 1) - 1, max.get());
+            }
+            return max.get();
+        }
+
+        public long getCount() { return total.sum(); }
+        public long getSum() { return sum.sum(); }
+        public long getMax() { return max.get(); }
+
+        static int index(long value) {
+            if (value < SUB_COUNT) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+            return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+        }
+
+        // smallest value that falls in bucket i
+        static long lowest(int i) {
+            if (i < SUB_COUNT) return i;
+            if (i >= BUCKETS) return Long.MAX_VALUE;
+            int exponent = i / SUB_COUNT + SUB_BITS - 1;
+            return (long) (SUB_COUNT + i % SUB_COUNT) << (exponent - SUB_BITS);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// End of day reports over every account, split across a fork-join pool
+// each task fills its own Report for a slice of the accounts and the halves are merged on the way back up,
+// so threads never share anything while they work. Per account figures come from AccountStatistics, so
+// no history is walked; with a bounded cache an account whose history is on disk is still read back for its
+// statistics (users.json keeps them next to the history), but without taking a cache slot, so a report does
+// not push the accounts in use out of memory
+public class ReportingEngine {
+    private static final int SLICE = 1024; // accounts a task handles without splitting further
+    static final int DORMANT_DAYS = 90; // no transactions for this long counts as dormant
+    static final int VOLUME_DAYS = 7; // days of transfer volume in a report, ending on the report date
+    static final String[] BALANCE_RANGES = {"0", "0.01-99.99", "100-999.99", "1k-9.9k", "10k-99.9k", "100k+"};
+
+    private final ForkJoinPool pool;
+
+    public ReportingEngine(int threads) {
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    // over the accounts registered when it starts, others may register while it runs
+    public Report run(UserManager userManager, LocalDate date) {
+        return run(userManager.snapshotAccounts(), date);
+    }
+
+    // accounts must not change size while the report runs
+    public Report run(List<Account> accounts, LocalDate date) {
+        return pool.invoke(new ReportTask(accounts, 0, accounts.size(), date));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @SuppressWarnings("serial") // tasks are never serialized
+    private static class ReportTask extends RecursiveTask<Report> {
+        private final List<Account> accounts;
+        private final int from, to;
+        private final LocalDate date;
+
+        ReportTask(List<Account> accounts, int from, int to, LocalDate date) {
+            this.accounts = accounts;
+            this.from = from;
+            this.to = to;
+            this.date = date;
+        }
+
+        protected Report compute() {
+            if (to - from <= SLICE) {
+                Report report = new Report(date);
+                for (int i = from; i < to; i++) report.add(accounts.get(i));
+                return report;
+            }
+            int mid = (from + to) >>> 1;
+            ReportTask left = new ReportTask(accounts, from, mid, date);
+            left.fork();
+            Report right = new ReportTask(accounts, mid, to, date).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    // mergeable totals: add() folds in one account, merge() folds in another slice's report
+    public static class Report {
+        private final LocalDate date;
+        private final long firstVolumeDay;
+        private long accounts;
+        private long totalBalanceCents;
+        private final long[] balanceRanges = new long[BALANCE_RANGES.length];
+        private long dormant;
+        private final long[] transfers = new long[VOLUME_DAYS]; // index 0 is the oldest day
+        private final long[] transferredCents = new long[VOLUME_DAYS];
+
+        Report(LocalDate date) {
+            this.date = date;
+            this.firstVolumeDay = date.toEpochDay() - VOLUME_DAYS + 1;
+        }
+
+        void add(Account account) {
+            long balance = account.getBalanceCents();
+            accounts++;
+            totalBalanceCents += balance;
+            balanceRanges[balanceRange(balance)]++;
+
+            AccountStatistics statistics = account.peekStatistics();
+            long[] dayTransfers = new long[VOLUME_DAYS];
+            long[] dayCents = new long[VOLUME_DAYS];
+            Long lastDay;
+            // addTransaction records into the statistics while holding the account, so its day map is read under
+            // the same lock, a transaction landing meanwhile would break the walk or leave a bucket half counted
+            synchronized (account) {
+                lastDay = statistics.getDays().floorKey(date.toEpochDay());
+                // only outgoing legs, so every transfer is counted once
+                for (Map.Entry<Long, AccountStatistics.Bucket> day : statistics.getDays().subMap(firstVolumeDay, true, date.toEpochDay(), true).entrySet()) {
+                    int i = (int) (day.getKey() - firstVolumeDay);
+                    dayTransfers[i] = day.getValue().getTransfersOut();
+                    dayCents[i] = day.getValue().getTransferredOutCents();
+                }
+            }
+
+            if (lastDay == null || lastDay <= date.toEpochDay() - DORMANT_DAYS) dormant++;
+            for (int i = 0; i < VOLUME_DAYS; i++) {
+                transfers[i] += dayTransfers[i];
+                transferredCents[i] += dayCents[i];
+            }
+        }
+
+        Report merge(Report other) {
+            accounts += other.accounts;
+            totalBalanceCents += other.totalBalanceCents;
+            dormant += other.dormant;
+            for (int i = 0; i < balanceRanges.length; i++) balanceRanges[i] += other.balanceRanges[i];
+            for (int i = 0; i < VOLUME_DAYS; i++) {
+                transfers[i] += other.transfers[i];
+                transferredCents[i] += other.transferredCents[i];
+            }
+            return this;
+        }
+
+        // 0 for an empty account, then one range per power of ten in whole currency units
+        private static int balanceRange(long cents) {
+            if (cents <= 0) return 0;
+            int range = 1;
+            for (long limit = 100_00; cents >= limit && range < BALANCE_RANGES.length - 1; limit *= 10) range++;
+            return range;
+        }
+
+        // getter methods
+        public long getAccounts() { return accounts; }
+        public long getTotalBalanceCents() { return totalBalanceCents; }
+        public long[] getBalanceRanges() { return balanceRanges.clone(); }
+        public long getDormant() { return dormant; }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Bank report for ").append(date).append('\n');
+            sb.append("----------------------------------------------------------\n");
+            sb.append(String.format("%-22s %d%n", "Accounts:", accounts));
+            sb.append(String.format("%-22s $%.2f%n", "Total deposits held:", totalBalanceCents / 100.0));
+            sb.append(String.format("%-22s %d (no activity in %d days)%n", "Dormant accounts:", dormant, DORMANT_DAYS));
+            sb.append("Balance distribution:\n");
+            for (int i = 0; i < balanceRanges.length; i++) {
+                sb.append(String.format("  %-12s %d%n", BALANCE_RANGES[i], balanceRanges[i]));
+            }
+            sb.append("Transfer volume:\n");
+            for (int i = 0; i < VOLUME_DAYS; i++) {
+                sb.append(String.format("  %s %8d transfers  $%.2f%n", LocalDate.ofEpochDay(firstVolumeDay + i), transfers[i], transferredCents[i] / 100.0));
+            }
+            return sb.toString();
+        }
+    }
+
+    public static void main(String[] args) {
+        String fileName = args.length > 0 ? args[0] : "users.json";
+        LocalDate date;
+        try {
+            date = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.now();
+        } catch (DateTimeParseException e) {
+            System.out.println("Error reading date: " + e.getMessage());
+            return;
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        UserManager userManager = UserManager.openReadOnly(fileName); // never saves or touches the journal
+        ReportingEngine engine = new ReportingEngine(threads);
+        long start = System.nanoTime();
+        Report report = engine.run(userManager, date);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        engine.shutdown();
+
+        System.out.print(report);
+        System.out.println("Report took " + millis + " ms on " + threads + " threads");
+    }
+}
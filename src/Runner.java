@@ -1,19 +1,24 @@
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class Runner {
     
     private UserManager userManager;
+    private TransactionEngine engine; // applies money movements with the right locks
     private Scanner scan = new Scanner(System.in);
-    private Random rand = new Random();
+    private static final int HISTORY_PAGE_SIZE = 10; // transactions shown before asking for more
         
     public boolean isUserLogged = false; // Flag to send user to the welcome page
     private Account currentAccount; // Field to track the account that's logged in
     
     public Runner() {
         userManager = new UserManager();
+        engine = new TransactionEngine(userManager);
         showWelcomeMenu();
         showMainMenu();
     }
@@ -82,12 +87,17 @@ public class Runner {
         }
     
         // Generate account number and routing number
-        String accountNumber = generateUniqueAccountNumber();
-        String routingNumber = generateRoutingNumber();
+        int accountNumber = userManager.generateUniqueAccountNumber();
+        int routingNumber = userManager.generateRoutingNumber();
         
         // Create new account
         Account newAccount = new Account(pin, userName, localDate, 0.0, accountNumber, routingNumber);
-        userManager.addAccount(newAccount);
+        try {
+            userManager.addAccount(newAccount);
+        } catch (UncheckedIOException e) {
+            System.out.println("❌ Registration could not be saved: " + e.getMessage());
+            return;
+        }
 
         typeAnim("✅ Registration successful! You can now log in to your account.\n", 15);
     }
@@ -179,8 +189,9 @@ public class Runner {
             typeAnim("3. Withdraw Funds from your account\n", 15);
             typeAnim("4. Transfer Funds to another account\n", 15);
             typeAnim("5. View Transaction History\n", 15);
-            typeAnim("6. Change your Account PIN\n", 15);
-            typeAnim("7. Logout from your account\n", 15);
+            typeAnim("6. View Monthly Statement\n", 15);
+            typeAnim("7. Change your Account PIN\n", 15);
+            typeAnim("8. Logout from your account\n", 15);
             typeAnim("Choose an option: ", 15);
 
             int userResponse;
@@ -208,6 +219,9 @@ public class Runner {
                     transactionsHistory();
                     break;
                 case 6:
+                    monthlyStatement();
+                    break;
+                case 7:
                 
                     System.out.println("\n-----------------------");
                     System.out.println("|      Change Pin     |");
@@ -218,13 +232,17 @@ public class Runner {
                     if (newPinInput.length() == 4 && newPinInput.matches("\\d{4}")) {
                         System.out.print("Updating your PIN");
                         typeAnim("...", 1000); // simulate loading
-                        userManager.updatePin(currentAccount, newPinInput); // call method in userManager to update PIN
-                        System.out.println("✅ PIN changed successfully.");
+                        try {
+                            userManager.updatePin(currentAccount, newPinInput); // call method in userManager to update PIN
+                            System.out.println("✅ PIN changed successfully.");
+                        } catch (UncheckedIOException e) {
+                            System.out.println("❌ PIN change could not be saved: " + e.getMessage());
+                        }
                     } else {
                         System.out.println("❌ Invalid PIN format. Please enter a valid 4-digit numeric PIN.");
                     }
                     break;
-                case 7:
+                case 8:
                     typeAnim("You have chosen to Logout. Thank you for using our services!\n", 20);
                     isUserLogged = false; // Logout logic
                     showWelcomeMenu();
@@ -237,32 +255,58 @@ public class Runner {
     }
 
     private void transactionsHistory() {
-        List<Transaction> transactions = currentAccount.getTransactions();
-        
         System.out.println("\n-------------------------------");
         System.out.println("|     Transaction History     |");
         System.out.println("-------------------------------\n");
 
-        if (transactions.isEmpty()) {
+        TransactionQuery query = new TransactionQuery().limit(HISTORY_PAGE_SIZE);
+        TransactionPage page = engine.query(currentAccount, query);
+        if (page.getTransactions().isEmpty()) {
             System.out.println("❌ No transactions found.");
-        } else {
-            System.out.println("----------------------------------------------------------");
-            System.out.printf("%-15s | $%-9s | %-15s | %s%n", "Transaction Type", "Amount", "Date", "Time");
-            System.out.println("----------------------------------------------------------");
-            
-            for (Transaction transaction : transactions) {
+            return;
+        }
+
+        System.out.println("----------------------------------------------------------");
+        System.out.printf("%-15s | $%-9s | %-15s | %s%n", "Transaction Type", "Amount", "Date", "Time");
+        System.out.println("----------------------------------------------------------");
+
+        while (true) {
+            for (Transaction transaction : page.getTransactions()) {
                 String date = transaction.getDateTime().toLocalDate().toString();
                 String time = transaction.getDateTime().toLocalTime().toString().substring(0, 8); // Format time
-                
+
                 System.out.printf("%-15s | $%.2f    | %s      | %s%n",
                         transaction.getType(),
                         transaction.getAmount(),
                         date,
                         time);
             }
-            
-            System.out.println("----------------------------------------------------------");
+            if (!page.hasMore()) break;
+
+            // show one page at a time so long histories do not flood the console
+            typeAnim("Press Enter for more, or Q to go back: ", 15);
+            if (scan.nextLine().trim().equalsIgnoreCase("q")) break;
+            page = engine.query(currentAccount, query.cursor(page.getNextCursor()));
         }
+
+        System.out.println("----------------------------------------------------------");
+    }
+
+    private void monthlyStatement() {
+        System.out.println("\n-------------------------------");
+        System.out.println("|      Monthly Statement      |");
+        System.out.println("-------------------------------\n");
+
+        typeAnim("Enter the month (YYYY-MM), or press Enter for this month: ", 15);
+        String input = scan.nextLine().trim();
+        YearMonth month;
+        try {
+            month = input.isEmpty() ? YearMonth.now() : YearMonth.parse(input);
+        } catch (DateTimeParseException e) {
+            System.out.println("❌ Invalid month format. Please use YYYY-MM.");
+            return;
+        }
+        System.out.print(StatementGenerator.generate(currentAccount, month));
     }
 
     private void fundTransfer() {
@@ -304,16 +348,19 @@ public class Runner {
         String sendMoney = scan.nextLine().trim();
         
         if (sendMoney.equalsIgnoreCase("yes") || sendMoney.equalsIgnoreCase("y")) {
+            // moves the money and records both sides, they go to disk while the animation plays and the
+            // confirmation prints once both are there; the console asks only once, so there is no retry to give
+            // an idempotency key to
+            CompletableFuture<Long> transfer = engine.transferOnceAsync(currentAccount, recipientAccount, amount, null);
             typeAnim("Transferring money", 20);
             typeAnim("...\n", 1000); // Simulate loading
-            currentAccount.withdraw(amount);
-            recipientAccount.deposit(amount);
-            userManager.updateBalance(currentAccount); // Update balance in UserManager
-            userManager.updateBalance(recipientAccount); // Update balance in UserManager
-            currentAccount.addTransaction(new Transaction("Transfer", amount, LocalDateTime.now())); // Transfer user made
-            recipientAccount.addTransaction(new Transaction("Incoming Transfer", amount, LocalDateTime.now())); // Incoming transfer for recipient
-            userManager.saveAccounts();
-            System.out.printf("✅ $%.2f was successfully transferred to %s.\n", amount, recipientAccount.getUserName());
+            Long transferId = awaitSaved(transfer, "Transfer");
+            if (transferId == null) return;
+            if (transferId != 0) {
+                System.out.printf("✅ $%.2f was successfully transferred to %s (transfer %d).\n", amount, recipientAccount.getUserName(), transferId);
+            } else {
+                System.out.println("❌ Transfer failed. Please check your balance and the recipient account.");
+            }
         } else {
             System.out.println("Transfer canceled.");
         }
@@ -334,11 +381,9 @@ public class Runner {
         }
     
         if (amount > 0) {
-            if (currentAccount.getBalance() >= amount) {
-                currentAccount.withdraw(amount);
-                userManager.updateBalance(currentAccount);
-                currentAccount.addTransaction(new Transaction("Withdraw", amount, LocalDateTime.now()));
-                userManager.saveAccounts();
+            Boolean withdrawn = awaitSaved(engine.withdrawAsync(currentAccount, amount), "Withdrawal");
+            if (withdrawn == null) return;
+            if (withdrawn) {
                 System.out.printf("✅ Withdrew: $%.2f successfully.\n", amount);
                 System.out.printf("Current Balance: $%.2f\n", currentAccount.getBalance());
             } else {
@@ -364,17 +409,30 @@ public class Runner {
         }
         
         if (amount > 0) {
-            currentAccount.deposit(amount);
-            userManager.updateBalance(currentAccount); // Update database
-            currentAccount.addTransaction(new Transaction("Deposit", amount, LocalDateTime.now()));
-            userManager.saveAccounts();
-            System.out.printf("✅ Deposited: $%.2f successfully.\n", amount);
-            System.out.printf("Current Balance: $%.2f\n", currentAccount.getBalance());
+            Boolean deposited = awaitSaved(engine.depositAsync(currentAccount, amount), "Deposit"); // Update balance and database
+            if (deposited == null) return;
+            if (deposited) {
+                System.out.printf("✅ Deposited: $%.2f successfully.\n", amount);
+                System.out.printf("Current Balance: $%.2f\n", currentAccount.getBalance());
+            } else {
+                System.out.printf("❌ Deposit refused: at most $%.2f at a time, and the balance must be able to hold it.\n", Account.MAX_AMOUNT);
+            }
         } else {
             System.out.println("❌ Deposit amount must be positive.");
         }
     }
     
+    // the answer once the change is on disk, or null after saying why it could not be saved; waiting here
+    // keeps the answer from being printed over the next menu
+    private static <T> T awaitSaved(CompletableFuture<T> result, String action) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            System.out.println("❌ " + action + " could not be saved: " + e.getCause().getMessage());
+            return null;
+        }
+    }
+
     private void displayAccountOverview() {
         System.out.println("\n----------------------------------");
         System.out.println("|       Account Overview         |");
@@ -386,24 +444,6 @@ public class Runner {
         System.out.printf("Balance:        $%.2f%n", currentAccount.getBalance());
     }
     
-    private String generateUniqueAccountNumber() {
-        String accountNumber; // Using account number as ID
-        boolean unique = false;
-
-        do {
-            accountNumber = String.format("%09d", rand.nextInt(1000000000)); // Generate a 9-digit number
-            if (userManager.isAccountNumberUnique(accountNumber) == null) {
-                unique = true;
-            }
-        } while (!unique);
-
-        return accountNumber;
-    }
-
-    private String generateRoutingNumber() {
-        return String.format("%09d", rand.nextInt(1000000000)); // Generate a 9-digit number
-    }
-
     public void typeAnim(String message, int delay) {
         for (char c : message.toCharArray()) {
             System.out.print(c);
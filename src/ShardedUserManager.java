@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Spreads accounts over several UserManagers by account number, each with its own file, journal, save lock
+// and TransactionEngine, so work on different shards never waits on the same lock and a save rewrites one shard
+//
+// a transfer between two shards is a two phase commit:
+//   1. both shards journal a PREPARE record holding their side of the transfer and wait for the disk
+//   2. a COMMIT record for the transfer id is made durable in users.decisions, this is the commit point
+// on startup a shard only replays the PREPARE records whose id has a COMMIT, so a crash anywhere before
+// the commit point leaves both sides untouched and a crash after it applies both
+//
+// if a journal fails between the PREPAREs and a durable COMMIT the outcome is unknown (the COMMIT may be on
+// disk), the caller gets the UncheckedIOException and both sides stay applied in memory, as a single shard
+// keeps a change it could not journal; neither shard may then be saved on its own, which would drop its
+// PREPARE while the other's may still replay, until a save of every shard together settles the transfer
+public class ShardedUserManager {
+    private static final int DECISION_LIMIT = 100_000; // decisions logged before every shard is saved and the log cleared
+
+    private final UserManager[] shards;
+    private final TransactionEngine[] engines;
+    private final Journal decisions; // COMMIT records of cross-shard transfers
+    private final Map<String, Integer> shardByUserName = new ConcurrentHashMap<>(); // usernames are unique across shards
+    private final AtomicLong issuedNumbers = new AtomicLong();
+
+    // users.json with 4 shards is stored as users-0.json .. users-3.json plus users.decisions
+    public ShardedUserManager(String fileName, int shardCount) {
+        int dot = fileName.lastIndexOf('.');
+        String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+        String extension = dot > 0 ? fileName.substring(dot) : "";
+
+        decisions = new Journal(base + ".decisions");
+        Set<String> committed = new HashSet<>();
+        for (String[] record : decisions.readRecords()) {
+            if (record[0].equals("COMMIT")) committed.add(record[1]);
+        }
+
+        shards = new UserManager[shardCount];
+        engines = new TransactionEngine[shardCount];
+        long accountCount = 0;
+        boolean folded = true;
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new UserManager(base + "-" + i + extension, committed::contains);
+            engines[i] = new TransactionEngine(shards[i]);
+            for (Account account : shards[i].getAccounts()) shardByUserName.put(account.getUserName(), i);
+            accountCount += shards[i].getAccounts().size();
+            folded &= !shards[i].hasUnsavedPrepares();
+        }
+        if (folded) {
+            decisions.clear(); // every shard folded its committed transfers into its file while loading
+        } else {
+            System.out.println("Keeping " + base + ".decisions, a shard could not save the transfers it replayed");
+        }
+        issuedNumbers.set(accountCount);
+    }
+
+    public int shardOf(int accountNumber) {
+        return (int) (((accountNumber * 0x9E3779B97F4A7C15L) >>> 33) % shards.length); // other bits than the lock stripes use
+    }
+
+    public UserManager getShard(int index) { return shards[index]; }
+    public int getShardCount() { return shards.length; }
+
+    public Account findAccount(int accountNumber) {
+        return shards[shardOf(accountNumber)].findAccount(accountNumber);
+    }
+
+    // for numbers typed in or read from a file, null if the text is not an account number in use
+    public Account findAccount(String accountNumber) {
+        try {
+            return findAccount(Account.parseNumber(accountNumber.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public Account login(String userName, String pin) {
+        Integer shard = shardByUserName.get(userName);
+        if (shard == null) {
+            System.out.println("Login failed for user: " + userName);
+            return null;
+        }
+        return shards[shard].login(userName, pin);
+    }
+
+    // false if the username or account number is already taken
+    public synchronized boolean addAccount(Account account) {
+        if (shardByUserName.containsKey(account.getUserName())) {
+            System.out.println("Username is taken: " + account.getUserName());
+            return false;
+        }
+        int shard = shardOf(account.getAccountNumber());
+        if (!shards[shard].addAccount(account)) return false;
+        shardByUserName.put(account.getUserName(), shard);
+        return true;
+    }
+
+    // same sequence as UserManager.generateUniqueAccountNumber, checked against the shard the number belongs to
+    public int generateUniqueAccountNumber() {
+        while (true) {
+            int accountNumber = UserManager.accountNumberAt(issuedNumbers.getAndIncrement());
+            if (findAccount(accountNumber) == null) return accountNumber;
+        }
+    }
+
+    public int generateRoutingNumber() {
+        return ThreadLocalRandom.current().nextInt(1000000000); // Generate a 9-digit number
+    }
+
+    public boolean deposit(Account account, double amount) {
+        return engines[shardOf(account.getAccountNumber())].deposit(account, amount);
+    }
+
+    public boolean withdraw(Account account, double amount) {
+        return engines[shardOf(account.getAccountNumber())].withdraw(account, amount);
+    }
+
+    // false if the amount is not positive, both sides are the same account or the sender is short
+    public boolean transfer(Account from, Account to, double amount) {
+        return transferOnce(from, to, amount, null) != 0;
+    }
+
+    // same as TransactionEngine.transferOnce, the sender's shard keeps the idempotency key
+    public long transferOnce(Account from, Account to, double amount, String idempotencyKey) {
+        int fromShard = shardOf(from.getAccountNumber());
+        int toShard = shardOf(to.getAccountNumber());
+        if (fromShard == toShard) return engines[fromShard].transferOnce(from, to, amount, idempotencyKey);
+        if (!Account.isValidAmount(amount)) return 0;
+
+        // locks and save locks are always taken lower shard first, so two transfers cannot wait on each other
+        long start = System.nanoTime();
+        boolean fromFirst = fromShard < toShard;
+        ReentrantLock firstLock = fromFirst ? engines[fromShard].lockFor(from) : engines[toShard].lockFor(to);
+        ReentrantLock secondLock = fromFirst ? engines[toShard].lockFor(to) : engines[fromShard].lockFor(from);
+        UserManager first = shards[Math.min(fromShard, toShard)];
+        UserManager second = shards[Math.max(fromShard, toShard)];
+
+        long transferId;
+        try {
+            firstLock.lock();
+            secondLock.lock();
+            try {
+                first.beginUpdate();
+                second.beginUpdate();
+                try {
+                    transferId = commitAcrossShards(from, shards[fromShard], to, shards[toShard], amount, idempotencyKey);
+                } catch (UncheckedIOException e) {
+                    first.holdCompaction(true); // before the save locks are let go, so no compaction slips in
+                    second.holdCompaction(true);
+                    throw e;
+                } finally {
+                    second.endUpdate();
+                    first.endUpdate();
+                }
+            } finally {
+                secondLock.unlock();
+                firstLock.unlock();
+            }
+        } catch (UncheckedIOException e) {
+            saveAccounts(); // settles the transfer if the disk is back, the shards stay held otherwise
+            throw e;
+        }
+
+        first.compactIfNeeded();
+        second.compactIfNeeded();
+        if (decisions.getRecordCount() >= DECISION_LIMIT) saveAccounts();
+        if (transferId == 0) Metrics.REFUSED.increment();
+        Metrics.TRANSFER.recordSince(start);
+        return transferId;
+    }
+
+    // runs with both accounts locked and both shards held against saves, returns once the transfer is committed
+    private long commitAcrossShards(Account from, UserManager fromShard, Account to, UserManager toShard, double amount,
+                                    String idempotencyKey) {
+        if (idempotencyKey != null) {
+            long previous = fromShard.findTransfer(from, idempotencyKey, to, Account.toCents(amount));
+            if (previous != 0) {
+                Metrics.TRANSFER_RETRIES.increment();
+                return previous; // committed before the first request let go of the sender's lock
+            }
+        }
+        long cents = Account.toCents(amount);
+        if (!from.withdrawCents(cents)) return 0; // nothing is written for a refused transfer
+        if (!TransactionEngine.credit(from, to, cents)) return 0;
+
+        long transferId = Transaction.newTransferId();
+        String prepareId = String.valueOf(transferId);
+        LocalDateTime now = LocalDateTime.now();
+        fromShard.prepareTransfer(prepareId, from, new Transaction("Transfer", amount, now, transferId));
+        toShard.prepareTransfer(prepareId, to, new Transaction("Incoming Transfer", amount, now, transferId));
+        if (idempotencyKey != null) fromShard.rememberTransfer(from, idempotencyKey, to, cents, transferId, prepareId);
+        fromShard.awaitDurable(); // phase one: both sides are on disk, but do not count yet
+        toShard.awaitDurable();
+
+        decisions.awaitDurable(decisions.append("COMMIT", prepareId)); // phase two: from here on both sides count
+        return transferId;
+    }
+
+    // saves every shard together and clears the decision log, which no journal needs once they are all saved
+    // false if a shard failed, its journal may still hold PREPARE records so the decisions are kept
+    public boolean saveAccounts() {
+        for (UserManager shard : shards) shard.lockSaves(); // in shard order, like the transfers
+        try {
+            boolean saved = true;
+            for (UserManager shard : shards) saved &= shard.saveAccounts();
+            if (!saved) return false;
+            try {
+                decisions.clear();
+            } catch (UncheckedIOException e) {
+                System.out.println("Error clearing commit decisions: " + e.getMessage());
+                return false;
+            }
+            for (UserManager shard : shards) shard.holdCompaction(false); // every transfer is settled in the files
+            return true;
+        } finally {
+            for (int i = shards.length - 1; i >= 0; i--) shards[i].unlockSaves();
+        }
+    }
+
+    // closes every shard and the decision log, see UserManager.close
+    public void close() throws IOException {
+        for (UserManager shard : shards) shard.close();
+        decisions.close();
+    }
+
+    public List<Account> getAccounts() {
+        List<Account> all = new ArrayList<>();
+        for (UserManager shard : shards) all.addAll(shard.getAccounts());
+        return all;
+    }
+}
@@ -0,0 +1,74 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+// Builds a monthly statement from the account's running statistics, the transactions themselves are never read
+// so the cost depends on the number of days with activity, not on the length of the history
+public class StatementGenerator {
+
+    public static String generate(Account account, YearMonth month) {
+        AccountStatistics statistics = account.getStatistics();
+        LocalDate first = month.atDay(1);
+        LocalDate end = month.plusMonths(1).atDay(1);
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        if (end.isAfter(tomorrow)) end = tomorrow; // the current month is averaged up to today
+        if (!end.isAfter(first)) end = first.plusDays(1); // future month, just the opening balance
+
+        AccountStatistics.Bucket totals = statistics.getMonths().get(month);
+        if (totals == null) totals = new AccountStatistics.Bucket(); // no activity this month
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Statement for ").append(account.getUserName()).append(" (").append(Account.formatNumber(account.getAccountNumber()))
+                .append(") - ").append(month).append('\n');
+        sb.append("----------------------------------------------------------\n");
+        line(sb, "Opening balance", -1, statistics.balanceAt(first.minusDays(1)));
+        line(sb, "Deposits", totals.getDeposits(), totals.getDepositedCents());
+        line(sb, "Withdrawals", totals.getWithdrawals(), totals.getWithdrawnCents());
+        line(sb, "Transfers out", totals.getTransfersOut(), totals.getTransferredOutCents());
+        line(sb, "Transfers in", totals.getTransfersIn(), totals.getTransferredInCents());
+        line(sb, "Largest transfer", -1, totals.getLargestTransferCents());
+        line(sb, "Closing balance", -1, statistics.balanceAt(month.atEndOfMonth()));
+        line(sb, "Average balance", -1, statistics.averageBalanceCents(first, end));
+        sb.append("----------------------------------------------------------\n");
+
+        // one line per day that had transactions
+        Map<Long, AccountStatistics.Bucket> days = statistics.getDays()
+                .subMap(first.toEpochDay(), true, month.atEndOfMonth().toEpochDay(), true);
+        for (Map.Entry<Long, AccountStatistics.Bucket> day : days.entrySet()) {
+            AccountStatistics.Bucket b = day.getValue();
+            sb.append(String.format("%s | in $%.2f | out $%.2f | balance $%.2f%n", LocalDate.ofEpochDay(day.getKey()),
+                    (b.getDepositedCents() + b.getTransferredInCents()) / 100.0,
+                    (b.getWithdrawnCents() + b.getTransferredOutCents()) / 100.0,
+                    b.getClosingCents() / 100.0));
+        }
+        if (days.isEmpty()) sb.append("No transactions this month.\n");
+        return sb.toString();
+    }
+
+    // count is left out when it is -1
+    private static void line(StringBuilder sb, String label, int count, long cents) {
+        sb.append(String.format("%-18s %6s  $%.2f%n", label + ":", count < 0 ? "" : String.valueOf(count), cents / 100.0));
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java -cp src StatementGenerator <accountNumber> [yyyy-mm] [users file]");
+            return;
+        }
+        YearMonth month;
+        try {
+            month = args.length > 1 ? YearMonth.parse(args[1]) : YearMonth.now();
+        } catch (DateTimeParseException e) {
+            System.out.println("Error reading month: " + e.getMessage());
+            return;
+        }
+        UserManager userManager = UserManager.openReadOnly(args.length > 2 ? args[2] : "users.json"); // never saves or touches the journal
+        Account account = userManager.findAccount(args[0]);
+        if (account == null) {
+            System.out.println("Account not found: " + args[0]);
+            return;
+        }
+        System.out.print(generate(account, month));
+    }
+}
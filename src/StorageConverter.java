@@ -0,0 +1,23 @@
+import java.io.File;
+import java.io.IOException;
+
+// Copies every account from one store file to another, the format follows each file's extension
+// e.g. java -cp src StorageConverter users.json users.bin
+public class StorageConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java -cp src StorageConverter <from file> <to file>");
+            return;
+        }
+
+        // going through UserManager also applies any journal left next to the source file, without folding it in
+        UserManager userManager = UserManager.openReadOnly(args[0]);
+        AccountStore.forFile(args[1]).save(userManager.getAccounts());
+
+        long from = new File(args[0]).length();
+        long to = new File(args[1]).length();
+        System.out.printf("Converted %d accounts: %,d bytes -> %,d bytes (%.1fx)%n",
+                userManager.getAccounts().size(), from, to, (double) from / to);
+    }
+}
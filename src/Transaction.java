@@ -1,20 +1,40 @@
 import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Transaction {
+    // ids start from the clock shifted left 20 bits, so a restart carries on above the last run's ids
+    // unless that run averaged over a million transfers per millisecond
+    private static final AtomicLong transferIds = new AtomicLong(System.currentTimeMillis() << 20);
+
     private String type; // "Deposit" "Withdraw" or "transfer"
     private double amount; 
     private LocalDateTime dateTime; 
+    private long transferId; // the same on both sides of a transfer, 0 for deposits, withdrawals and older records
+
+    // for views that read their values from somewhere else, see ColumnarTransactionStore
+    protected Transaction() {}
 
     public Transaction(String type, double amount, LocalDateTime dateTime) {
+        this(type, amount, dateTime, 0);
+    }
+
+    public Transaction(String type, double amount, LocalDateTime dateTime, long transferId) {
         this.type = type;
         this.amount = amount;
         this.dateTime = dateTime;
+        this.transferId = transferId;
+    }
+
+    // a new id for both sides of one transfer
+    public static long newTransferId() {
+        return transferIds.incrementAndGet();
     }
 
     // Getters
     public String getType() { return type; }
     public double getAmount() { return amount; }
     public LocalDateTime getDateTime() { return dateTime; }
+    public long getTransferId() { return transferId; }
 
     // handle json
     public void setDateTime(LocalDateTime dateTime){ this.dateTime = dateTime; }
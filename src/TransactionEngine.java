@@ -0,0 +1,233 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Runs deposits, withdrawals and transfers safely from many threads at once
+// each account maps to one of a fixed set of locks, a transfer takes both of its locks
+// in index order so two opposite transfers can never wait on each other
+// the blocking forms throw UncheckedIOException when the journal could not write the change, see
+// UserManager.awaitDurable, and the futures of the async forms complete with that error
+public class TransactionEngine {
+    private static final int STRIPES = 256;
+
+    private final UserManager userManager;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public TransactionEngine(UserManager userManager) {
+        this.userManager = userManager;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    // false if the amount is not positive or the balance cannot hold it
+    public boolean deposit(Account account, double amount) {
+        long start = System.nanoTime();
+        boolean applied = applyDeposit(account, amount);
+        if (applied) userManager.awaitDurable(); // acknowledged once the group commit holding it is on disk
+        Metrics.DEPOSIT.recordSince(start);
+        return applied;
+    }
+
+    // false if the amount is not positive or the balance does not cover it
+    public boolean withdraw(Account account, double amount) {
+        long start = System.nanoTime();
+        boolean applied = applyWithdraw(account, amount);
+        if (applied) userManager.awaitDurable();
+        Metrics.WITHDRAW.recordSince(start);
+        return applied;
+    }
+
+    // false if the amount is not positive, both sides are the same account or the sender is short
+    public boolean transfer(Account from, Account to, double amount) {
+        return transferOnce(from, to, amount, null) != 0;
+    }
+
+    // returns the id both sides of the transfer carry, 0 when refused for the reasons transfer gives false
+    // a request retried with the same idempotency key from the same sender gets the first transfer's id back
+    // without moving any money; a null key makes every call a new transfer, and a refused one leaves no key
+    // throws IllegalArgumentException if the key was used for a transfer to another account or of another amount,
+    // and IllegalStateException, moving nothing, for a new key while the store already holds 100,000 keys from
+    // the last day (a key is remembered for a day, see IdempotencyIndex)
+    public long transferOnce(Account from, Account to, double amount, String idempotencyKey) {
+        long start = System.nanoTime();
+        long transferId = applyTransfer(from, to, amount, idempotencyKey);
+        if (transferId != 0) userManager.awaitDurable(); // waiting outside the locks lets other transfers join the same fsync
+        Metrics.TRANSFER.recordSince(start);
+        return transferId;
+    }
+
+    // the async forms return as soon as the change is made in memory and queued for the journal, the future
+    // completes with the answer the blocking form gives once the change is on disk (at once when refused)
+    public CompletableFuture<Boolean> depositAsync(Account account, double amount) {
+        long start = System.nanoTime();
+        if (!applyDeposit(account, amount)) return CompletableFuture.completedFuture(false);
+        return durable(Metrics.DEPOSIT, start);
+    }
+
+    public CompletableFuture<Boolean> withdrawAsync(Account account, double amount) {
+        long start = System.nanoTime();
+        if (!applyWithdraw(account, amount)) return CompletableFuture.completedFuture(false);
+        return durable(Metrics.WITHDRAW, start);
+    }
+
+    public CompletableFuture<Boolean> transferAsync(Account from, Account to, double amount) {
+        return transferOnceAsync(from, to, amount, null).thenApply(transferId -> transferId != 0);
+    }
+
+    public CompletableFuture<Long> transferOnceAsync(Account from, Account to, double amount, String idempotencyKey) {
+        long start = System.nanoTime();
+        long transferId = applyTransfer(from, to, amount, idempotencyKey);
+        if (transferId == 0) return CompletableFuture.completedFuture(0L);
+        return durable(Metrics.TRANSFER, start).thenApply(done -> transferId);
+    }
+
+    private CompletableFuture<Boolean> durable(Metrics.Histogram latency, long start) {
+        return userManager.whenDurable().thenApply(done -> {
+            latency.recordSince(start);
+            return true;
+        });
+    }
+
+    private boolean applyDeposit(Account account, double amount) {
+        if (!Account.isValidAmount(amount)) return false;
+
+        ReentrantLock lock = lockFor(account);
+        lock.lock();
+        try {
+            userManager.update(() -> {
+                account.depositCents(Account.toCents(amount)); // throws before anything is journaled
+                userManager.updateBalance(account);
+                userManager.recordTransaction(account, new Transaction("Deposit", amount, LocalDateTime.now()));
+            });
+        } catch (ArithmeticException e) {
+            System.out.println("Error depositing: the balance cannot hold " + amount + " more");
+            Metrics.REFUSED.increment(); // counted like a withdrawal the balance does not cover
+            return false;
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    private boolean applyWithdraw(Account account, double amount) {
+        if (!Account.isValidAmount(amount)) return false;
+
+        boolean applied;
+        ReentrantLock lock = lockFor(account);
+        lock.lock();
+        try {
+            applied = userManager.tryUpdate(() -> {
+                if (!account.withdrawCents(Account.toCents(amount))) return false; // atomic check and debit
+                userManager.updateBalance(account);
+                userManager.recordTransaction(account, new Transaction("Withdraw", amount, LocalDateTime.now()));
+                return true;
+            });
+        } finally {
+            lock.unlock();
+        }
+        if (!applied) Metrics.REFUSED.increment();
+        return applied;
+    }
+
+    // the transfer id, or 0 if refused
+    private long applyTransfer(Account from, Account to, double amount, String idempotencyKey) {
+        if (!Account.isValidAmount(amount) || from == to) return 0;
+
+        ReentrantLock first = lockFor(from);
+        ReentrantLock second = lockFor(to);
+        if (stripe(to) < stripe(from)) { // always lock the lower stripe first
+            ReentrantLock swap = first;
+            first = second;
+            second = swap;
+        }
+
+        long[] transferId = new long[1];
+        boolean applied;
+        first.lock();
+        second.lock(); // a no-op second hold when both accounts share a stripe
+        try {
+            applied = userManager.tryUpdate(() -> {
+                // retries of one key come from one sender, so they queue on the sender's lock and see each other
+                if (idempotencyKey != null) {
+                    transferId[0] = userManager.findTransfer(from, idempotencyKey, to, Account.toCents(amount));
+                    if (transferId[0] != 0) {
+                        Metrics.TRANSFER_RETRIES.increment();
+                        return true;
+                    }
+                }
+                if (!from.withdrawCents(Account.toCents(amount))) return false;
+                if (!credit(from, to, Account.toCents(amount))) return false;
+                userManager.updateBalance(from);
+                userManager.updateBalance(to);
+                LocalDateTime now = LocalDateTime.now();
+                transferId[0] = Transaction.newTransferId(); // lets reconciliation pair the two sides
+                userManager.recordTransaction(from, new Transaction("Transfer", amount, now, transferId[0])); // Transfer user made
+                userManager.recordTransaction(to, new Transaction("Incoming Transfer", amount, now, transferId[0])); // Incoming transfer for recipient
+                if (idempotencyKey != null) userManager.rememberTransfer(from, idempotencyKey, to, Account.toCents(amount), transferId[0], null);
+                return true;
+            });
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+        if (!applied) Metrics.REFUSED.increment();
+        return applied ? transferId[0] : 0;
+    }
+
+    // a copy of the account's history taken while no transaction can be appended to it
+    public List<Transaction> history(Account account) {
+        ReentrantLock lock = lockFor(account);
+        lock.lock();
+        try {
+            return new ArrayList<>(account.getTransactions());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // one page of the account's history, read while no transaction can be appended to it
+    public TransactionPage query(Account account, TransactionQuery query) {
+        ReentrantLock lock = lockFor(account);
+        lock.lock();
+        try {
+            return account.queryTransactions(query);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the balance as it stood at dateTime, read while no transaction can be appended to the history
+    public long balanceCentsAt(Account account, LocalDateTime dateTime) {
+        ReentrantLock lock = lockFor(account);
+        lock.lock();
+        try {
+            return account.balanceCentsAt(dateTime);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // second half of a transfer, the sender already debited: false with the sender refunded if the recipient's
+    // balance cannot hold the amount; both accounts are locked, so nothing else moved the sender meanwhile
+    static boolean credit(Account from, Account to, long cents) {
+        try {
+            to.depositCents(cents);
+            return true;
+        } catch (ArithmeticException e) {
+            from.depositCents(cents);
+            System.out.println("Error transferring: account " + Account.formatNumber(to.getAccountNumber()) + " cannot hold any more");
+            return false;
+        }
+    }
+
+    ReentrantLock lockFor(Account account) {
+        return locks[stripe(account)];
+    }
+
+    private static int stripe(Account account) {
+        return ((account.getAccountNumber() * 0x9E3779B9) >>> 16) % STRIPES; // spreads sequential numbers
+    }
+}
@@ -0,0 +1,16 @@
+import java.util.List;
+
+// One page of query results, pass nextCursor back in the query to get the page after it
+public class TransactionPage {
+    private final List<Transaction> transactions;
+    private final int nextCursor; // -1 when there is nothing more
+
+    public TransactionPage(List<Transaction> transactions, int nextCursor) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Transaction> getTransactions() { return transactions; }
+    public int getNextCursor() { return nextCursor; }
+    public boolean hasMore() { return nextCursor != -1; }
+}
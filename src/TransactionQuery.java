@@ -0,0 +1,42 @@
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+// Filters and page settings for Account.queryTransactions, every filter is optional
+// e.g. new TransactionQuery().types("Transfer").from(march).to(april).limit(20)
+// from and to narrow the search by binary search and types through the account's per type positions,
+// amounts are checked entry by entry among those
+public class TransactionQuery {
+    private LocalDateTime from; // inclusive
+    private LocalDateTime to; // exclusive
+    private Set<String> types; // null means every type
+    private double minAmount = Double.NEGATIVE_INFINITY;
+    private double maxAmount = Double.POSITIVE_INFINITY;
+    private int cursor = -1; // position to continue from, -1 starts at the beginning of the range
+    private int limit = 20;
+    private boolean newestFirst;
+
+    public TransactionQuery from(LocalDateTime from) { this.from = from; return this; }
+    public TransactionQuery to(LocalDateTime to) { this.to = to; return this; }
+    public TransactionQuery types(String... types) { this.types = new HashSet<>(Arrays.asList(types)); return this; }
+    public TransactionQuery minAmount(double minAmount) { this.minAmount = minAmount; return this; }
+    public TransactionQuery maxAmount(double maxAmount) { this.maxAmount = maxAmount; return this; }
+    public TransactionQuery cursor(int cursor) { this.cursor = cursor; return this; }
+    public TransactionQuery limit(int limit) { this.limit = limit; return this; }
+    public TransactionQuery newestFirst(boolean newestFirst) { this.newestFirst = newestFirst; return this; }
+
+    // getter methods
+    public LocalDateTime getFrom() { return from; }
+    public LocalDateTime getTo() { return to; }
+    public Set<String> getTypes() { return types; }
+    public int getCursor() { return cursor; }
+    public int getLimit() { return limit; }
+    public boolean isNewestFirst() { return newestFirst; }
+
+    // the filters that are not covered by the time range search
+    public boolean matches(Transaction transaction) {
+        if (types != null && !types.contains(transaction.getType())) return false;
+        return transaction.getAmount() >= minAmount && transaction.getAmount() <= maxAmount;
+    }
+}
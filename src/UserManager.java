@@ -2,271 +2,508 @@ import java.io.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class UserManager {
     private List<Account> accounts; // List of accounts
-    private final String fileName = "users.json"; // JSON file for storing user data
+    private Map<String, Account> accountsByUserName; // index for login and username checks
+    private AccountNumberMap accountsByNumber; // index for account number lookups, keyed by the int number
+    private final String fileName; // file storing user data, users.json unless told otherwise
+    private final AccountStore store; // reads and writes fileName in its format
+    private final Journal journal; // changes since the last full save
+    private final boolean readOnly; // see openReadOnly
+    private static final int COMPACT_THRESHOLD = 1000; // least journal records before users.json is rewritten
+    private volatile long snapshotRecords; // accounts plus transactions in users.json, the journal may grow to this size
+
+    // account numbers walk a full period permutation of 0..999,999,999, so each step gives a new number
+    // without guessing and retrying; numbers handed out by the old random scheme are simply skipped
+    private static final long NUMBER_RANGE = 1_000_000_000L;
+    private static final long NUMBER_MULTIPLIER = 738_219_467L; // shares no factor with the range (2 and 5)
+    private static final long NUMBER_OFFSET = 104_729L;
+    private final AtomicLong issuedNumbers = new AtomicLong();
+
+    private final Predicate<String> committedTransfers; // decides replay of PREPARE records, see ShardedUserManager
+    private final ThreadLocal<Long> lastRecord = ThreadLocal.withInitial(() -> 0L); // this thread's newest journal record
+    private final IdempotencyIndex transferKeys = new IdempotencyIndex(); // keyed by sender account number and key
+    private volatile long carriedRecords; // live keys written into the new journal by the last save
+    private boolean unsavedPrepares; // startup replayed PREPARE records it could not fold into a save
+    private volatile boolean compactionHeld; // a cross-shard transfer prepared here has no known outcome, see holdCompaction
+
+    // updates share the read side, a full save takes the write side so it sees no half done change
+    private final ReentrantReadWriteLock saveLock = new ReentrantReadWriteLock();
+
+    // one daemon thread shared by every manager rewrites snapshots in the background
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compacting = new AtomicBoolean(); // a rewrite is queued or running
 
     // Banking System Constructor
     public UserManager() {
+        this("users.json");
+    }
+
+    public UserManager(String fileName) {
+        this(fileName, transferId -> false);
+    }
+
+    // at most cachedAccounts accounts keep their history in memory, the rest is read back from disk when used
+    public UserManager(String fileName, int cachedAccounts) {
+        this(fileName, transferId -> false, cachedAccounts);
+    }
+
+    public UserManager(String fileName, Predicate<String> committedTransfers) {
+        this(fileName, committedTransfers, 0);
+    }
+
+    // committedTransfers says which cross-shard transfers reached their commit decision
+    public UserManager(String fileName, Predicate<String> committedTransfers, int cachedAccounts) {
+        this(fileName, committedTransfers, cachedAccounts, false);
+    }
+
+    // the store with its journal applied in memory, for tools that only read it (statements, reports, conversion)
+    // nothing is saved and the journal is neither folded in nor cleared, that is left to the bank; changes throw
+    // histories are read into primitive columns (see AccountStore.forReading), so a whole store fits in less heap
+    public static UserManager openReadOnly(String fileName) {
+        return new UserManager(fileName, transferId -> false, 0, true);
+    }
+
+    private UserManager(String fileName, Predicate<String> committedTransfers, int cachedAccounts, boolean readOnly) {
+        this.fileName = fileName;
+        this.readOnly = readOnly;
+        this.committedTransfers = committedTransfers;
+        this.store = readOnly ? AccountStore.forReading(fileName) : AccountStore.forFile(fileName, cachedAccounts);
+        int dot = fileName.lastIndexOf('.');
+        this.journal = new Journal((dot > 0 ? fileName.substring(0, dot) : fileName) + ".journal");
         accounts = new ArrayList<>(); // initialize list
+        accountsByUserName = new ConcurrentHashMap<>();
+        accountsByNumber = new AccountNumberMap();
         loadAccounts(); // load existing accounts from JSON file
+        replayJournal(); // apply changes made after the last full save
+        issuedNumbers.set(accounts.size()); // continue the account number sequence roughly where it left off
+        if (readOnly) return;
+
+        // one series per store, so every shard is exported; close() drops them
+        String labels = Metrics.label("store", fileName);
+        Metrics.gauge("accounts", labels, () -> accounts.size());
+        Metrics.gauge("journal_bytes", labels, journal::getFileSize);
+        Metrics.gauge("journal_queued_records", labels, this::getQueuedJournalRecords);
+        Metrics.gauge("idempotency_keys", labels, transferKeys::size);
+        Metrics.gauge("store_bytes", labels, () -> new File(fileName).length());
+    }
+
+    // waits for the journal to reach the disk and closes it, and stops exporting this store's gauges, which
+    // otherwise keep the manager reachable; the manager must not be used afterwards
+    // gauges go by store, so a manager opened over the same store later has already taken them over
+    public void close() throws IOException {
+        Metrics.removeGauges(Metrics.label("store", fileName));
+        journal.close();
+    }
+
+    // runs a group of changes that a concurrent save must see all or none of
+    public void update(Runnable change) {
+        tryUpdate(() -> {
+            change.run();
+            return true;
+        });
     }
 
-    public void updateBalance(Account account) { // find the account in the list and update its balance
-        for (Account acc : accounts) {
-            if (acc.getAccountNumber().equals(account.getAccountNumber())) {
+    // same as update, for changes that can be refused part way (e.g. insufficient funds)
+    public boolean tryUpdate(BooleanSupplier change) {
+        boolean applied;
+        beginUpdate();
+        try {
+            applied = change.getAsBoolean();
+        } finally {
+            endUpdate();
+        }
+        compactIfNeeded();
+        return applied;
+    }
+
+    // the two halves of tryUpdate, for a change that spans several managers and must hold all of them
+    void beginUpdate() {
+        if (readOnly) throw new IllegalStateException(fileName + " is open read only");
+        saveLock.readLock().lock();
+    }
+
+    void endUpdate() {
+        saveLock.readLock().unlock();
+    }
+
+    // blocks every update, so a save of several managers together sees none of them half done
+    void lockSaves() {
+        saveLock.writeLock().lock();
+    }
+
+    void unlockSaves() {
+        saveLock.writeLock().unlock();
+    }
+
+    public void updateBalance(Account account) { // find the account and update its balance
+        Account acc = findAccount(account.getAccountNumber());
+        if (acc != null) {
+            update(() -> {
                 acc.setBalance(account.getBalance()); // update balance
-                saveAccounts(); // update database
-                // System.out.println("Updated balance for account: " + acc.getAccountNumber());
-                break;
-            }
+                appendRecord("BALANCE", String.valueOf(acc.getAccountNumber()), String.valueOf(acc.getBalance())); // update database
+            });
+            // System.out.println("Updated balance for account: " + acc.getAccountNumber());
         }
     }
 
+    public void recordTransaction(Account account, Transaction transaction) {
+        update(() -> {
+            int index = account.getTransactionCount(); // position makes the record safe to replay twice
+            account.addTransaction(transaction);
+            appendRecord("TRANSACTION", String.valueOf(account.getAccountNumber()), String.valueOf(index),
+                    transaction.getType(), String.valueOf(transaction.getAmount()), transaction.getDateTime().toString(),
+                    String.valueOf(transaction.getTransferId()));
+        });
+    }
+
+    // the transfer the sender already made under this idempotency key, 0 if none or the key has expired
+    // a hit also makes awaitDurable cover the original, which may still be on its way to disk
+    // throws IllegalArgumentException if the key was used for a transfer to another account or of another amount,
+    // and IllegalStateException for a new key while the index is full of live ones (see IdempotencyIndex.hasRoom)
+    long findTransfer(Account from, String idempotencyKey, Account to, long cents) {
+        long now = System.currentTimeMillis();
+        IdempotencyIndex.Entry entry = transferKeys.get(from.getAccountNumber() + " " + idempotencyKey, now);
+        if (entry == null) {
+            if (!transferKeys.hasRoom(now)) throw new IllegalStateException("Too many idempotency keys in use, try again later");
+            return 0;
+        }
+        if (!entry.matches(to.getAccountNumber(), cents)) {
+            throw new IllegalArgumentException("Idempotency key " + idempotencyKey + " was already used for a different transfer");
+        }
+        if (entry.record > lastRecord.get()) lastRecord.set(entry.record);
+        return entry.transferId;
+    }
+
+    // called in the same update as the transfer, prepareId is the cross-shard transfer the key belongs to
+    // (null for one made by a single manager) so replay drops keys of transfers that never committed
+    void rememberTransfer(Account from, String idempotencyKey, Account to, long cents, long transferId, String prepareId) {
+        long now = System.currentTimeMillis();
+        String account = String.valueOf(from.getAccountNumber());
+        appendRecord("KEY", account, idempotencyKey, String.valueOf(transferId), String.valueOf(now), prepareId,
+                String.valueOf(to.getAccountNumber()), String.valueOf(cents));
+        transferKeys.put(account + " " + idempotencyKey, transferId, to.getAccountNumber(), cents, now, lastRecord.get(), now);
+    }
+
+    // one side of a cross-shard transfer, called between beginUpdate and endUpdate once the balance has moved
+    // the record only counts on replay if the transfer's commit decision was logged
+    void prepareTransfer(String transferId, Account account, Transaction transaction) {
+        int index = account.getTransactionCount();
+        account.addTransaction(transaction);
+        appendRecord("PREPARE", transferId, String.valueOf(account.getAccountNumber()), String.valueOf(index),
+                transaction.getType(), String.valueOf(transaction.getAmount()), transaction.getDateTime().toString(),
+                String.valueOf(account.getBalance()), String.valueOf(transaction.getTransferId()));
+    }
+
     public void updatePin(Account account, String newPin) {
-        account.setPin(newPin); // update pin
-        saveAccounts(); // save changes to JSON
-        System.out.println("Updated PIN for account: " + account.getAccountNumber());
+        update(() -> {
+            account.setPin(newPin); // update pin
+            appendRecord("PIN", String.valueOf(account.getAccountNumber()), newPin); // save change to the journal
+        });
+        awaitDurable();
+        System.out.println("Updated PIN for account: " + Account.formatNumber(account.getAccountNumber()));
     }
 
-    public void addAccount(Account account) {
-        if (isUserNameUnique(account.getUserName()) && isAccountNumberUnique(account.getAccountNumber()) == null) {
-            accounts.add(account);
-            saveAccounts();
-            System.out.println("Account added: " + account.getUserName());
-        } else {
-            System.out.println("Account with this username or account number already exists.");
+    // false if the username or account number is already taken
+    public boolean addAccount(Account account) {
+        synchronized (this) { // the uniqueness check and the insert must not interleave with another registration
+            if (!isUserNameUnique(account.getUserName()) || findAccount(account.getAccountNumber()) != null) {
+                System.out.println("Account with this username or account number already exists.");
+                return false;
+            }
+            update(() -> {
+                indexAccount(account);
+                appendRecord("ACCOUNT", account.getUserName(), account.getPin(), account.getDateOfBirth().toString(),
+                        String.valueOf(account.getBalance()), String.valueOf(account.getAccountNumber()), String.valueOf(account.getRoutingNumber()));
+            });
+        }
+        awaitDurable(); // outside the lock so other registrations share the fsync
+        System.out.println("Account added: " + account.getUserName());
+        return true;
+    }
+
+    public int generateUniqueAccountNumber() {
+        while (true) {
+            long step = issuedNumbers.getAndIncrement();
+            int accountNumber = accountNumberAt(step); // Using account number as ID
+            if (findAccount(accountNumber) == null) return accountNumber;
         }
     }
 
+    // the step-th number of the account number sequence, every step below the range gives a different number
+    static int accountNumberAt(long step) {
+        if (step >= NUMBER_RANGE) throw new IllegalStateException("Every 9-digit account number is in use");
+        return (int) ((NUMBER_MULTIPLIER * step + NUMBER_OFFSET) % NUMBER_RANGE);
+    }
+
+    public int generateRoutingNumber() {
+        return ThreadLocalRandom.current().nextInt(1000000000); // Generate a 9-digit number
+    }
+
+    // batch jobs turn off the per change durability wait and call commit() once per chunk
+    public void setAutoFlush(boolean autoFlush) {
+        journal.setAutoFlush(autoFlush);
+    }
+
+    // makes every change so far durable with one write and one fsync, throws UncheckedIOException if it could not
+    public void commit() {
+        journal.sync();
+    }
+
+    // waits until every change this thread made is on disk, concurrent callers share one fsync
+    // does not wait while auto flush is off, commit() covers that case
+    // throws UncheckedIOException if the journal could not write them: they are made in memory but not on
+    // disk, and are only kept if a later save succeeds
+    public void awaitDurable() {
+        journal.awaitDurable(lastRecord.get());
+    }
+
+    // changes waiting for the journal's encoder, near 64k means appends are being held back
+    public int getQueuedJournalRecords() {
+        return journal.getQueuedRecords();
+    }
+
+    // same as awaitDurable without blocking, completes once every change this thread made is on disk
+    public CompletableFuture<Void> whenDurable() {
+        return journal.whenDurable(lastRecord.get());
+    }
+
+    private void appendRecord(String... fields) {
+        lastRecord.set(journal.append(fields));
+    }
+
     public boolean isUserNameUnique(String userName) {
-        for (Account account : accounts) {
-            if (account.getUserName().equals(userName)) {
-                System.out.println("Username is taken: " + userName);
-                return false; // username is taken
-            }
+        if (accountsByUserName.containsKey(userName)) {
+            System.out.println("Username is taken: " + userName);
+            return false; // username is taken
         }
         return true; // username is unique
     }
 
     public Account isAccountNumberUnique(String accountNumber) {
-        for (Account account : accounts) {
-            if (account.getAccountNumber().equals(accountNumber)) {
-                System.out.println("Account number already exists: " + accountNumber);
-                return account; // already exists
-            }
+        Account account = findAccount(accountNumber);
+        if (account != null) {
+            System.out.println("Account number already exists: " + accountNumber);
+            return account; // already exists
         }
         return null; // account number is unique
     }
 
+    public Account findAccount(int accountNumber) {
+        return accountsByNumber.get(accountNumber); // null if no account has this number
+    }
+
+    // for numbers typed in or read from a file, null if the text is not an account number in use
+    public Account findAccount(String accountNumber) {
+        try {
+            return findAccount(Account.parseNumber(accountNumber.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // null if no account has this number
+    public TransactionPage queryTransactions(String accountNumber, TransactionQuery query) {
+        Account account = findAccount(accountNumber);
+        return account == null ? null : account.queryTransactions(query);
+    }
+
     public Account login(String userName, String pin) {
-        for (Account account : accounts) {
-            if (account.getUserName().equals(userName) && account.getPin().equals(pin)) {
-                // System.out.println("Login successful for user: " + userName);
-                return account; // return account if successful login
-            }
+        long start = System.nanoTime();
+        Account account = accountsByUserName.get(userName);
+        if (account != null && account.getPin().equals(pin)) {
+            // System.out.println("Login successful for user: " + userName);
+            Metrics.LOGIN.recordSince(start);
+            return account; // return account if successful login
         }
+        Metrics.LOGIN_FAILURES.increment();
+        Metrics.LOGIN.recordSince(start);
         System.out.println("Login failed for user: " + userName);
         return null; // return null if logic failed
     }
 
-    public void saveAccounts() {
-        try (FileWriter writer = new FileWriter(fileName)) {
-            StringBuilder json = new StringBuilder("[\n");
-            
-            // Iterate through all accounts
-            for (int i = 0; i < accounts.size(); i++) {
-                Account account = accounts.get(i);
-                json.append("  {\n");
-                
-                // Write account basic information
-                json.append("    \"userName\": \"").append(account.getUserName()).append("\",\n");
-                json.append("    \"pin\": \"").append(account.getPin()).append("\",\n");
-                json.append("    \"dateOfBirth\": \"").append(account.getDateOfBirth()).append("\",\n");
-                json.append("    \"balance\": ").append(account.getBalance()).append(",\n");
-                json.append("    \"accountNumber\": \"").append(account.getAccountNumber()).append("\",\n");
-                json.append("    \"routingNumber\": \"").append(account.getRoutingNumber()).append("\",\n");
-                
-                // Write transactions array
-                json.append("    \"transactions\": [\n");
-                List<Transaction> transactions = account.getTransactions();
-                
-                for (int j = 0; j < transactions.size(); j++) {
-                    Transaction t = transactions.get(j);
-                    json.append("      {\n");
-                    json.append("        \"type\": \"").append(t.getType()).append("\",\n");
-                    json.append("        \"amount\": ").append(t.getAmount()).append(",\n");
-                    json.append("        \"dateTime\": \"").append(t.getDateTime()).append("\"\n");
-                    
-                    // Add comma if not last transaction
-                    if (j < transactions.size() - 1) {
-                        json.append("      },\n");
-                    } else {
-                        json.append("      }\n");
-                    }
-                }
-                
-                json.append("    ]\n");
-                
-                // Add comma if not last account
-                if (i < accounts.size() - 1) {
-                    json.append("  },\n");
-                } else {
-                    json.append("  }\n");
-                }
-            }
-            json.append("]\n");
-            
-            // Write the complete JSON to file
-            writer.write(json.toString());
+    // true once users.json holds every change and the journal is cleared, false if either failed
+    public boolean saveAccounts() {
+        if (readOnly) throw new IllegalStateException(fileName + " is open read only");
+        long start = System.nanoTime();
+        saveLock.writeLock().lock();
+        try {
+            // stream every account to a temp file that replaces the store once complete
+            store.save(accounts);
+            snapshotRecords = countRecords();
+            journal.clear(); // users.json now holds every journaled change
+            carriedRecords = carryTransferKeys();
             // System.out.println("Accounts saved to JSON file: " + fileName);
-        } catch (IOException e) {
+            return true;
+        } catch (IOException | UncheckedIOException e) { // a journal that cannot be cleared is kept, replay is idempotent
             System.out.println("Error saving accounts: " + e.getMessage());
             e.printStackTrace();
+            return false;
+        } finally {
+            saveLock.writeLock().unlock();
+            Metrics.SAVE_ACCOUNTS.recordSince(start);
         }
     }
 
-    private void loadAccounts() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            StringBuilder jsonBuilder = new StringBuilder();
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                jsonBuilder.append(line);
-            }
+    // idempotency keys are not part of users.json, the live ones start the new journal so retries are
+    // still recognised after a restart; their transfers are saved now, so the commit check is not needed
+    private long carryTransferKeys() {
+        long[] count = new long[1];
+        transferKeys.forEach(System.currentTimeMillis(), entry -> {
+            int space = entry.key.indexOf(' ');
+            journal.append("KEY", entry.key.substring(0, space), entry.key.substring(space + 1),
+                    String.valueOf(entry.transferId), String.valueOf(entry.createdMillis), null,
+                    String.valueOf(entry.recipient), String.valueOf(entry.cents));
+            count[0]++;
+        });
+        if (count[0] > 0) journal.sync(); // a crash right after the save must not forget them
+        return count[0];
+    }
 
-            parseJson(jsonBuilder.toString()); // Convert from JSON to Account objects
-            // System.out.println("Accounts loaded from JSON file: " + fileName);
+    // a store that exists but cannot be read stops startup: carrying on with the accounts read so far would
+    // fold the journal into a save of just those and lose the rest for good
+    private void loadAccounts() {
+        // accounts are built one at a time straight from the file stream
+        long start = System.nanoTime();
+        try {
+            store.load(this::indexAccount);
+            // System.out.println("Accounts loaded from file: " + fileName);
         } catch (FileNotFoundException e) {
             System.out.println("JSON file not found. Starting with an empty account list.");
         } catch (IOException e) {
             System.out.println("Error loading accounts: " + e.getMessage());
+            throw new UncheckedIOException("Cannot load " + fileName + ", it and its journal are left as they are", e);
         }
+        Metrics.LOAD_ACCOUNTS.recordSince(start);
     }
 
-    private void parseJson(String json) {
-        if (json.isEmpty() || json.equals("[]")) return;
-        // System.out.println("Parsing JSON data...");
-
-        try {
-            // remove the outer array brackets
-            json = json.substring(1, json.length() - 1);
-
-            // split individual account objects while respecting the structure 
-            List<String> accountStrings = splitAccountObjects(json);
-
-            // process each account object
-            for (String accountString : accountStrings) {
-                processAccountObject(accountString);
+    private void replayJournal() {
+        List<String[]> records = journal.readRecords();
+
+        long keys = 0;
+        boolean prepares = false;
+        for (String[] record : records) {
+            if (record[0].equals("KEY")) keys++;
+            if (record[0].equals("PREPARE")) prepares = true;
+            try {
+                applyRecord(record);
+            } catch (RuntimeException e) {
+                System.out.println("Skipping bad journal record: " + String.join(" ", record));
             }
+        }
 
-        } catch (Exception e) {
-            System.out.println("Error parsing JSON: " + e.getMessage());
-            e.printStackTrace();
+        if (readOnly) {
+            snapshotRecords = countRecords();
+        } else if (records.size() > keys) {
+            unsavedPrepares = !saveAccounts() && prepares; // fold the replayed changes into users.json
+        } else {
+            snapshotRecords = countRecords(); // nothing but keys carried by the last save, the journal stays as it is
+            carriedRecords = keys;
         }
     }
 
-    private void processAccountObject(String accountString) {
-
-        // find the values of each field in the account
-        String userName = extractValue(accountString, "userName");
-        String pin = extractValue(accountString, "pin");
-        String dateOfBirth = extractValue(accountString, "dateOfBirth");
-        double balance = Double.parseDouble(extractValue(accountString, "balance"));
-        String accountNumber = extractValue(accountString, "accountNumber");
-        String routingNumber = extractValue(accountString, "routingNumber");
-        
-        // create account instance
-        Account account = new Account(pin, userName, LocalDate.parse(dateOfBirth), balance, accountNumber, routingNumber);
-
-        List<Transaction> transactions = parseTransactions(accountString);
-
-        // set transactions and add account to list
-        account.setTransactions(transactions);
-        accounts.add(account);
-        // System.out.println("Account loaded: " + userName);
+    // the journal still holds PREPARE records replayed at startup, their commit decisions must be kept
+    boolean hasUnsavedPrepares() {
+        return unsavedPrepares;
     }
 
-    private List<Transaction> parseTransactions(String accountString) {
-        List<Transaction> transactions = new ArrayList<>();
-
-        // exctract transactions section from the json
-        String transactionString = accountString.substring(accountString.indexOf("\"transactions\"")); // extracts from the name to the end of string
-        transactionString = transactionString.substring(transactionString.indexOf("["), transactionString.lastIndexOf("]") + 1); // extracts the array of the transaction field
-
-        // process individual transactions if any exist
-        if (!transactionString.equals("[]")) {
-            String[] transactionArray = transactionString.split("\\{"); // split the array at the bracket and make it an array
-
-            for (String transString : transactionArray) {
-                if (transString.contains("type")) { // check if its a valid transaction object
-                    String type = extractValue(transString, "type");
-                    double amount = Double.parseDouble(extractValue(transString, "amount"));
-                    String dateTime = extractValue(transString, "dateTime");
-                    transactions.add(new Transaction(type, amount, LocalDateTime.parse(dateTime)));
+    private void applyRecord(String[] record) {
+        switch (record[0]) {
+            case "ACCOUNT":
+                if (findAccount(record[5]) == null) {
+                    indexAccount(new Account(record[2], record[1], LocalDate.parse(record[3]),
+                            Double.parseDouble(record[4]), record[5], record[6]));
                 }
-            }
+                break;
+            case "BALANCE":
+                findAccount(record[1]).setBalance(Double.parseDouble(record[2]));
+                break;
+            case "TRANSACTION":
+                Account account = findAccount(record[1]);
+                // only append if this transaction is not already in the snapshot
+                if (account.getTransactionCount() == Integer.parseInt(record[2])) {
+                    long transferId = record.length > 6 ? Long.parseLong(record[6]) : 0; // older records have no id
+                    account.addTransaction(new Transaction(record[3], Double.parseDouble(record[4]), LocalDateTime.parse(record[5]), transferId));
+                }
+                break;
+            case "PIN":
+                findAccount(record[1]).setPin(record[2]);
+                break;
+            case "PREPARE":
+                if (!committedTransfers.test(record[1])) break; // never committed, the transfer did not happen
+                Account side = findAccount(record[2]);
+                if (side.getTransactionCount() == Integer.parseInt(record[3])) {
+                    long transferId = record.length > 8 ? Long.parseLong(record[8]) : 0;
+                    side.addTransaction(new Transaction(record[4], Double.parseDouble(record[5]), LocalDateTime.parse(record[6]), transferId));
+                }
+                side.setBalance(Double.parseDouble(record[7]));
+                break;
+            case "KEY": // account, key, transfer id, time, cross-shard transfer or empty, recipient, cents
+                if (record.length > 5 && !record[5].isEmpty() && !committedTransfers.test(record[5])) break;
+                boolean full = record.length > 7; // older records have neither the recipient nor the amount
+                transferKeys.put(record[1] + " " + record[2], Long.parseLong(record[3]), full ? Integer.parseInt(record[6]) : 0,
+                        full ? Long.parseLong(record[7]) : -1, Long.parseLong(record[4]), 0,
+                        System.currentTimeMillis()); // expired keys are dropped here
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown record " + record[0]);
         }
-
-        return transactions;
     }
 
-    private String extractValue(String json, String key){
-        int start = json.indexOf("\"" + key + "\""); // creates json pattern "userName"
-        if(start == -1) return null;
-
-        start = json.indexOf(":", start) + 1; // find where the start of the value is after the color
-        
-        // skip whitespace             // check if theres a space where start is at rn
-        while (start < json.length() && Character.isWhitespace(json.charAt(start))) {
-            start++;
-        }
-
-        boolean isString = json.charAt(start) == '"'; // check if the value is a string (String json starts with quotes)
-
-        if (isString) {
-            start++; // skipp the opening quote
-
-            // find the closing quote from the current position
-            int end = json.indexOf("\"", start); 
-            return json.substring(start, end);
-        } else {
-            // for numbers, read until it hits a non digit character
-            int end = start;
-            while (end < json.length() && (Character.isDigit(json.charAt(end)) || json.charAt(end) == '.')) {
-                end++; // keep looking for the end of the value       
-            }
-
-            return json.substring(start, end); // returns the value from after the color to the end of the value
+    // letting the journal grow as large as the snapshot keeps the cost of rewrites constant per change
+    // the rewrite runs on the compactor thread, the change that crossed the line does not wait for it
+    void compactIfNeeded() {
+        long threshold = Math.max(COMPACT_THRESHOLD, snapshotRecords) + carriedRecords;
+        if (!compactionHeld && journal.getRecordCount() >= threshold && compacting.compareAndSet(false, true)) {
+            COMPACTOR.execute(() -> {
+                saveLock.writeLock().lock(); // a hold set by an update that ran meanwhile is seen here
+                try {
+                    if (!compactionHeld) saveAccounts(); // rewrite users.json and start a new journal
+                } finally {
+                    saveLock.writeLock().unlock();
+                    compacting.set(false);
+                }
+            });
         }
     }
 
-    private List<String> splitAccountObjects(String json) {
-        List<String> accountStrings = new ArrayList<>();
-        int depth = 0;
-        StringBuilder currentString = new StringBuilder();
-
-        // parse character by character to handle nested structures
-        for (char c : json.toCharArray()) {
-            currentString.append(c);
-            if (c == '{') depth++; // next indentation - main information
-            if (c == '}') {
-                depth--;
-                if (depth == 0) {
-                    // found a complete account object
-                    accountStrings.add(currentString.toString()); // convert the whole object to a single string to handle them separetely
-                    currentString = new StringBuilder(); // prepare a new string for the next iteration
-
-                }
-            }
+    // while held the journal is not compacted on its own, set between beginUpdate and endUpdate when a
+    // cross-shard transfer fails before its commit decision and cleared once every shard has been saved
+    void holdCompaction(boolean held) {
+        compactionHeld = held;
+    }
 
-        }
-        return accountStrings; 
-        // returns list of accounts converted in strings meaning each index is an account
+    private long countRecords() {
+        long count = accounts.size();
+        for (Account account : accounts) count += account.getTransactionCount();
+        return count;
     }
 
+    private void indexAccount(Account account) {
+        accounts.add(account);
+        accountsByUserName.put(account.getUserName(), account);
+        accountsByNumber.put(account.getAccountNumber(), account);
+    }
 
+    // a copy that is safe to walk while accounts are registered, which add to the list under this monitor
+    public synchronized List<Account> snapshotAccounts() {
+        return new ArrayList<>(accounts);
+    }
 
     public List<Account> getAccounts() {
         return accounts;